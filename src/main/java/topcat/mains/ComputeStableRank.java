@@ -26,6 +26,7 @@ import topcat.persistence.contours.ExponentialContour;
 import topcat.persistence.contours.PersistenceContour;
 import topcat.persistence.contours.StandardContour;
 import topcat.persistence.stablerank.StableRankFunction;
+import topcat.persistence.simplex.ParallelSimplexReader;
 import topcat.persistence.simplex.SimplexStorageStructure;
 
 import java.io.File;
@@ -52,7 +53,7 @@ public class ComputeStableRank {
     public static void main(String[] args){
         SimplexStorageStructure simplexStorageStructure;
         try {
-            simplexStorageStructure = SimplexStorageStructure.readFromFile(new File(args[0]));
+            simplexStorageStructure = ParallelSimplexReader.readFromFile(new File(args[0]));
         }catch(IOException ioe){
             ioe.printStackTrace();
             return;
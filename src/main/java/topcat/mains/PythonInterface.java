@@ -34,6 +34,7 @@ import topcat.persistence.simplex.SimplexStorageStructure;
 import topcat.persistence.simplex.SimplicialComplex;
 import topcat.persistence.stablerank.StableRankFunction;
 import topcat.util.Point;
+import topcat.util.PointCloud;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,7 +54,17 @@ public class PythonInterface {
     }
 
     public static DistanceMatrix euclideanDistanceMatrix(List<List<Double>> points){
-        return DistanceMatrix.computeEuclideanDistanceMatrix(transformPoints(points));
+        return PointCloud.fromLists(points).computeEuclideanDistanceMatrix();
+    }
+
+    /**
+     * Returns a sparse Euclidean distance matrix with the pairs of points within distance 'radius' of each other.
+     * @param points
+     * @param radius
+     * @return
+     */
+    public static DistanceMatrix euclideanDistanceMatrix(List<List<Double>> points, double radius){
+        return PointCloud.fromLists(points).computeEuclideanDistanceMatrix(radius);
     }
 
     private static List<DistanceMatrix> parseDistances(List<Point> points, List<String> distances){
@@ -104,13 +104,18 @@ public class BMatrix {
         if(cols != B.rows) {
             throw new WrongDimensionException("Matrix dimensions don't match. dim(A) = (" + rows + ", " + cols + "), dim(B) = (" + B.rows + ", " + B.cols + ")");
         }
+        if(useFourRussians(B)){
+            BMatrix C = multFourRussians(B);
+            if(C != null) return C;
+        }
         BMatrix C = new BMatrix(rows, B.cols);
         for(int i=0;i<rows;i++){
             if(A.containsKey(i)) {
                 IntIterator iterator = A.get(i).getIndexSetIterator();
                 BVector row = new BVector(B.cols);
                 while (iterator.hasNext()) {
-                    row = row.plus(B.getRow(iterator.nextInt()));
+                    int k = iterator.nextInt();
+                    if(B.hasCreatedRow(k)) row.add(B.getRow(k));
                 }
                 C.setRow(i, row);
             }
@@ -118,6 +123,61 @@ public class BMatrix {
         return C;
     }
 
+    /**
+     * Returns true if the product with B is large and dense enough to be computed with the Method of Four Russians.
+     * @param B
+     * @return
+     */
+    private boolean useFourRussians(BMatrix B){
+        if(rows < FourRussians.THRESHOLD || cols < FourRussians.THRESHOLD || B.cols < FourRussians.THRESHOLD){
+            return false;
+        }
+        long nonzeros = 0;
+        for(BVector row : A.values()) nonzeros += row.getNumberOfNonZeroElements();
+        return nonzeros * FourRussians.MIN_FILL_RATIO >= (long) rows * cols;
+    }
+
+    /**
+     * Computes the product with B on packed words using the Method of Four Russians.
+     * @param B
+     * @return the product, or null if the matrices could not be packed.
+     */
+    private BMatrix multFourRussians(BMatrix B){
+        int aWords = words(cols), bWords = words(B.cols);
+        long[] a = toWords(rows, aWords);
+        long[] b = B.toWords(B.rows, bWords);
+        if(a == null || b == null) return null;
+        long[] c = FourRussians.mult(a, rows, aWords, cols, b, bWords);
+        BMatrix C = new BMatrix(rows, B.cols);
+        for(int i : getCreatedRowIndices()){
+            C.setRow(i, BVector.fromWords(B.cols, c, i*bWords, bWords));
+        }
+        return C;
+    }
+
+    /**
+     * Returns the number of 64-bit words needed to store 'cols' bits.
+     * @param cols
+     * @return
+     */
+    static int words(int cols){
+        return (cols + Long.SIZE - 1) >>> 6;
+    }
+
+    /**
+     * Packs the first 'rows' rows of the matrix into a flat array with 'words' words per row.
+     * @param rows
+     * @param words
+     * @return the packed rows, or null if the matrix has entries which don't fit.
+     */
+    long[] toWords(int rows, int words){
+        long[] packed = new long[rows*words];
+        for(int i : getCreatedRowIndices()){
+            if(i < 0 || i >= rows || !A.get(i).packInto(packed, i*words, words)) return null;
+        }
+        return packed;
+    }
+
     public BVector mult(BVector b){
         if(cols != b.getLength()) {
             throw new WrongDimensionException("Vector dimension don't match");
@@ -141,7 +201,9 @@ public class BMatrix {
                 " = ("+rows+", "+cols+") dim(B) = ("+B.rows+", "+B.cols+")");
         BMatrix C = new BMatrix(rows, cols);
         for(int i=0;i<rows;i++){
-            C.setRow(i, getRow(i).plus(B.getRow(i)));
+            BVector row = new BVector(getRow(i));
+            row.add(B.getRow(i));
+            C.setRow(i, row);
         }
         return C;
     }
@@ -208,9 +270,6 @@ public class BMatrix {
      * @return a basis (as row vectors) for the subspace spanned by the rows of A.
      */
     public static BMatrix getBasis(BMatrix A) throws WrongDimensionException{
-        BMatrix At = A.transpose();
-        final int[] column_sizes = new int[At.rows];
-        for(int i=0;i<At.rows;i++) column_sizes[i] = At.getRow(i).getNumberOfNonZeroElements();
         List<IntPair> pivots = reduceRows(new BMatrix(A));
         BMatrix B = new BMatrix(pivots.size(), A.cols);
         for(int i=0;i<pivots.size();i++){
@@ -221,6 +280,10 @@ public class BMatrix {
 
     public static int rank(BMatrix A){
         if(A==null) return 0;
+        RowReduction reduction = RowReduction.pack(A, null);
+        if(reduction != null){
+            return reduction.rank();
+        }
         int pivots=-1;
         try{
             pivots = reduceRows(new BMatrix(A), new BMatrix(A.rows, 1)).size();
@@ -231,7 +294,19 @@ public class BMatrix {
         return pivots;
     }
 
+    /**
+     * Reduces the rows of A to reduced row echelon form in place.
+     * @param A
+     * @return a list of (row, column) pairs of the pivots.
+     * @throws WrongDimensionException
+     */
     public static List<IntPair> reduceRows(BMatrix A) throws WrongDimensionException{
+        RowReduction reduction = RowReduction.pack(A, null);
+        if(reduction != null){
+            List<IntPair> pivots = reduction.reduce();
+            reduction.unpack(A, null);
+            return pivots;
+        }
         List<IntPair> pivots = new ArrayList<>();
         int[] rowIndices = A.getCreatedRowIndices();
         for(int i=0; i<A.rows;i++){
@@ -256,7 +331,20 @@ public class BMatrix {
         return pivots;
     }
 
+    /**
+     * Reduces the rows of A to reduced row echelon form in place and performs the same row operations on B.
+     * @param A
+     * @param B
+     * @return a list of (row, column) pairs of the pivots.
+     * @throws WrongDimensionException
+     */
     public static List<IntPair> reduceRows(BMatrix A, BMatrix B) throws WrongDimensionException{
+        RowReduction reduction = RowReduction.pack(A, B);
+        if(reduction != null){
+            List<IntPair> pivots = reduction.reduce();
+            reduction.unpack(A, B);
+            return pivots;
+        }
         List<IntPair> pivots = new ArrayList<>();
         int[] rowIndices = A.getCreatedRowIndices();
         for(int i=0; i<A.rows;i++){
@@ -284,6 +372,12 @@ public class BMatrix {
 
 
     public static void reduceRows(BMatrix A, BMatrix B, List<IntPair> pivots) throws WrongDimensionException{
+        RowReduction reduction = RowReduction.pack(A, B);
+        if(reduction != null){
+            reduction.reduce(pivots);
+            reduction.unpack(A, B);
+            return;
+        }
         int[] rowIndices = A.getCreatedRowIndices();
         for(IntPair pivot : pivots){
             int i = pivot._1();
@@ -26,22 +26,41 @@ import topcat.matrix.exception.WrongDimensionException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Represents a vector with coefficients in the field Z/2Z. It is implemented as a boolean matrix with element-wise
  * XOR as additive operation and the AND operation for matrix multiplication.
+ *
+ * The non-zero positions are either stored sparsely in a hash set or densely as bits packed into 64-bit words,
+ * in which case addition is a word-wise XOR. The representation is chosen per instance by the fill ratio of the
+ * vector and is not visible through the API.
  */
 public class BVector {
-    private IntOpenHashSet pos; //the non-zero positions
+    /**
+     * A vector is stored densely once at least one in DENSE_FILL_RATIO of its positions are non-zero, i.e
+     * when it on average has at least one non-zero element per word.
+     */
+    static final int DENSE_FILL_RATIO = 64;
+
+    private IntOpenHashSet pos; //the non-zero positions, null if the vector is dense
+    private long[] words; //the non-zero positions packed into words, null if the vector is sparse
+    private int nnz; //the number of non-zero positions if the vector is dense
+    private boolean unpackable; //true if a sparse vector has a position outside of the packed words
     private int length;
 
     public BVector(int length){
-        this(length, new IntOpenHashSet());
+        this.length = length;
+        if(length <= Long.SIZE){
+            this.words = new long[1];
+        }else{
+            this.pos = new IntOpenHashSet();
+        }
     }
 
     public BVector(int length, int[] nonzeroIndices){
         this(length);
-        for(int i : nonzeroIndices) pos.add(i);
+        for(int i : nonzeroIndices) set(i, true);
     }
 
     public BVector(int length, IntOpenHashSet pos){
@@ -49,32 +68,90 @@ public class BVector {
         this.pos = pos;
     }
 
+    private BVector(int length, long[] words, int nnz){
+        this.length = length;
+        this.words = words;
+        this.nnz = nnz;
+    }
+
     public BVector(BVector V){
         this.length = V.length;
-        this.pos = new IntOpenHashSet();
-        IntIterator iterator = V.getIndexSetIterator();
-        while(iterator.hasNext()){
-            set(iterator.nextInt(), true);
+        if(V.isDense()){
+            this.words = V.words.clone();
+            this.nnz = V.nnz;
+        }else{
+            this.pos = new IntOpenHashSet(V.pos);
+            this.unpackable = V.unpackable;
         }
     }
 
+    /**
+     * Returns the vector of length 'length' with a single non-zero element in position 'i'.
+     * @param length
+     * @param i
+     * @return
+     * @throws IndexOutOfBoundsException if 'i' is not in 0, ..., length-1.
+     */
+    public static BVector unit(int length, int i){
+        if(i < 0 || i >= length){
+            throw new IndexOutOfBoundsException("Position "+i+" is outside of a vector of length "+length+".");
+        }
+        if(length <= Long.SIZE){
+            return new BVector(length, new long[]{1L << i}, 1);
+        }
+        IntOpenHashSet pos = new IntOpenHashSet(1);
+        pos.add(i);
+        return new BVector(length, pos);
+    }
+
     public BVector copy(){
         return new BVector(this);
     }
 
+    /**
+     * Returns true if the non-zero positions of the vector are stored as packed words.
+     * @return
+     */
+    public boolean isDense(){
+        return words != null;
+    }
+
     public int getNumberOfNonZeroElements(){
-        return pos.size();
+        return isDense() ? nnz : pos.size();
     }
 
     public boolean get(int i){
+        if(isDense()){
+            int w = i >>> 6;
+            return w < words.length && (words[w] & (1L << i)) != 0;
+        }
         return pos.contains(i);
     }
 
     public void set(int i, boolean val){
+        if(isDense()){
+            int w = i >>> 6;
+            if(i < 0 || w >= words.length){
+                //Position outside of the packed words, fall back to the sparse representation
+                if(!val) return;
+                toSparse();
+                unpackable = true;
+            }else {
+                long mask = 1L << i;
+                if (((words[w] & mask) != 0) != val) {
+                    words[w] ^= mask;
+                    nnz += val ? 1 : -1;
+                }
+                return;
+            }
+        }
         if(val){
             pos.add(i);
-        }else if(pos.contains(i)){
-                pos.remove(i);
+            if(shouldBeDense(pos.size())) toDense();
+        }else if(pos.remove(i) && (i < 0 || i >= Long.SIZE*(long) wordCount(length))){
+            //The position that could not be packed may have been the only one, try packing again
+            unpackable = false;
+            if(shouldBeDense(pos.size())) toDense();
         }
     }
 
@@ -91,6 +168,20 @@ public class BVector {
         if(other.length != this.length){
             throw new WrongDimensionException("Length of vectors don't match.");
         }
+        if(isDense() && other.isDense() && words.length == other.words.length){
+            long[] n = new long[words.length];
+            int count = 0;
+            for(int i=0;i<n.length;i++){
+                n[i] = words[i] ^ other.words[i];
+                count += Long.bitCount(n[i]);
+            }
+            return new BVector(length, n, count);
+        }
+        if(isDense() || other.isDense()){
+            BVector n = isDense() ? new BVector(this) : new BVector(other);
+            n.add(isDense() ? other : this);
+            return n;
+        }
         IntOpenHashSet larger;
         IntOpenHashSet smaller;
 
@@ -104,17 +195,59 @@ public class BVector {
         IntIterator iterator = smaller.iterator();
         IntOpenHashSet n = new IntOpenHashSet(larger);
         while(iterator.hasNext()){
-            int val = iterator.next();
+            int val = iterator.nextInt();
             if(n.contains(val)){
                 n.remove(val); //XOR operation
             }else{
                 n.add(val);
             }
         }
-        return new BVector(length, n);
+        BVector v = new BVector(length, n);
+        if(shouldBeDense(n.size())) v.toDense();
+        return v;
+    }
+
+    /**
+     * Adds the vector 'other' to this vector in place, i.e this = this + other.
+     * @param other
+     * @throws WrongDimensionException
+     */
+    public void add(BVector other) throws WrongDimensionException {
+        if(other.length != this.length){
+            throw new WrongDimensionException("Length of vectors don't match.");
+        }
+        if(other == this){
+            if(isDense()){
+                words = new long[words.length];
+                nnz = 0;
+            }else{
+                pos.clear();
+            }
+            return;
+        }
+        if(!isDense() && shouldBeDense(pos.size() + other.getNumberOfNonZeroElements())){
+            toDense();
+        }
+        if(isDense() && other.isDense() && words.length == other.words.length){
+            int count = 0;
+            for(int i=0;i<words.length;i++){
+                words[i] ^= other.words[i];
+                count += Long.bitCount(words[i]);
+            }
+            nnz = count;
+            return;
+        }
+        IntIterator iterator = other.getIndexSetIterator();
+        while(iterator.hasNext()){
+            int i = iterator.nextInt();
+            set(i, !get(i));
+        }
     }
 
     public IntIterator getIndexSetIterator(){
+        if(isDense()){
+            return new WordIterator();
+        }
         return pos.iterator();
     }
 
@@ -150,6 +283,88 @@ public class BVector {
         return v;
     }
 
+    /**
+     * Creates a vector from the 'nWords' words in 'src' starting at 'offset', using the representation given
+     * by the fill ratio of the words.
+     * @param length
+     * @param src
+     * @param offset
+     * @param nWords
+     * @return
+     */
+    static BVector fromWords(int length, long[] src, int offset, int nWords){
+        int count = 0;
+        for(int i=0;i<nWords;i++) count += Long.bitCount(src[offset+i]);
+        long[] w = new long[Math.max(1, nWords)];
+        System.arraycopy(src, offset, w, 0, nWords);
+        BVector v = new BVector(length, w, count);
+        if(length > Long.SIZE && !v.shouldBeDense(count)) v.toSparse();
+        return v;
+    }
+
+    /**
+     * Writes the non-zero positions of this vector as bits into the 'nWords' words of 'dest' starting at
+     * 'offset'. The words are assumed to be zero.
+     * @param dest
+     * @param offset
+     * @param nWords
+     * @return false if the vector has a non-zero position which does not fit in the words.
+     */
+    boolean packInto(long[] dest, int offset, int nWords){
+        if(isDense()){
+            for(int i=nWords;i<words.length;i++) if(words[i] != 0) return false;
+            System.arraycopy(words, 0, dest, offset, Math.min(nWords, words.length));
+            return true;
+        }
+        IntIterator iterator = pos.iterator();
+        while(iterator.hasNext()){
+            int i = iterator.nextInt();
+            if(i < 0 || (i >>> 6) >= nWords) return false;
+            dest[offset + (i >>> 6)] |= 1L << i;
+        }
+        return true;
+    }
+
+    private boolean shouldBeDense(int nonzeros){
+        return !unpackable && (long) nonzeros * DENSE_FILL_RATIO >= length;
+    }
+
+    private static int wordCount(int length){
+        return Math.max(1, (length + Long.SIZE - 1) >>> 6);
+    }
+
+    /**
+     * Switches to the packed word representation, unless a position is outside of the packed words, in which case
+     * the vector stays sparse until that position is removed.
+     */
+    private void toDense(){
+        long[] w = new long[wordCount(length)];
+        IntIterator iterator = pos.iterator();
+        while(iterator.hasNext()){
+            int i = iterator.nextInt();
+            if(i < 0 || (i >>> 6) >= w.length){
+                unpackable = true;
+                return;
+            }
+            w[i >>> 6] |= 1L << i;
+        }
+        this.nnz = pos.size();
+        this.words = w;
+        this.pos = null;
+    }
+
+    /**
+     * Switches to the hash set representation.
+     */
+    private void toSparse(){
+        IntOpenHashSet p = new IntOpenHashSet(nnz);
+        IntIterator iterator = getIndexSetIterator();
+        while(iterator.hasNext()) p.add(iterator.nextInt());
+        this.pos = p;
+        this.words = null;
+        this.nnz = 0;
+    }
+
     @Override
     public boolean equals(Object o){
         if(o == null || !o.getClass().equals(this.getClass())) return false;
@@ -167,14 +382,39 @@ public class BVector {
     public String toString(){
         StringBuilder sb = new StringBuilder();
         sb.append("[ ");
-        if(pos.contains(0)) sb.append(1);
+        if(get(0)) sb.append(1);
         else sb.append(0);
         for(int i=1;i<length;i++){
             sb.append(", ");
-            if(pos.contains(i)) sb.append(1);
+            if(get(i)) sb.append(1);
             else sb.append(0);
         }
         sb.append(" ]");
         return sb.toString();
     }
+
+    /**
+     * Iterates over the non-zero positions of a dense vector in increasing order.
+     */
+    private class WordIterator implements IntIterator {
+        private int w = 0;
+        private long word = words[0];
+
+        @Override
+        public boolean hasNext() {
+            while(word == 0){
+                if(++w >= words.length) return false;
+                word = words[w];
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if(!hasNext()) throw new NoSuchElementException();
+            int i = (w << 6) + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            return i;
+        }
+    }
 }
@@ -0,0 +1,168 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.matrix;
+
+/**
+ * Implements the Method of Four Russians (M4RI) for matrices over Z/2Z whose rows are packed into 64-bit words,
+ * row i starting at word i*words of a flat array. Groups of K rows are combined into a table of all 2^K sums once,
+ * after which a whole group is applied to a row by a single table lookup and one row addition.
+ *
+ * [1] - Efficient Multiplication of Dense Matrices over GF(2) by Albrecht, Bard and Hart (arXiv:0811.1714).
+ */
+class FourRussians {
+    /**
+     * Number of rows combined in each table. Divides 64, so a group of columns never straddles two words.
+     */
+    static final int K = 8;
+
+    /**
+     * Matrices with fewer rows or columns than this are multiplied and reduced with the ordinary row operations.
+     */
+    static final int THRESHOLD = 256;
+
+    /**
+     * A matrix is multiplied with M4RI if at least one in MIN_FILL_RATIO of its entries are non-zero, otherwise
+     * adding one row per non-zero entry is cheaper than one table lookup per group of K columns.
+     */
+    static final int MIN_FILL_RATIO = K;
+
+    /**
+     * Computes the product C = AB.
+     * @param a - the m x n matrix A
+     * @param m
+     * @param aWords - words per row of A
+     * @param n
+     * @param b - the n x p matrix B
+     * @param bWords - words per row of B
+     * @return C with 'bWords' words per row.
+     */
+    static long[] mult(long[] a, int m, int aWords, int n, long[] b, int bWords){
+        long[] c = new long[m*bWords];
+        long[] table = new long[(1 << K)*bWords];
+        int[] group = new int[K];
+        for(int g=0;g<n;g+=K){
+            int k = Math.min(K, n-g);
+            for(int i=0;i<k;i++) group[i] = g+i;
+            buildTable(table, b, group, k, bWords, 0);
+            int w = g >>> 6, shift = g & 63;
+            long mask = (1L << k) - 1;
+            for(int i=0;i<m;i++){
+                int index = (int)((a[i*aWords+w] >>> shift) & mask);
+                if(index != 0) add(c, i*bWords, table, index*bWords, 0, bWords);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Computes the rank of a matrix by M4RI elimination to row echelon form. The columns are processed in blocks
+     * of K: up to K pivots are found in the block with lazily applied row operations, the pivot rows are reduced
+     * among themselves and the remaining rows are then cleared on the block by one table lookup each.
+     * The matrix is destroyed in the process.
+     * @param a
+     * @param rows
+     * @param cols
+     * @param words - words per row
+     * @return
+     */
+    static int rank(long[] a, int rows, int cols, int words){
+        int[] order = new int[rows]; //row permutation, the pivot rows are moved to the front
+        for(int i=0;i<rows;i++) order[i] = i;
+        int[] applied = new int[rows]; //number of pivots of the current block that has been applied to each row
+        int[] pivotCols = new int[K];
+        int[] pivotRows = new int[K];
+        long[] table = new long[(1 << K)*words];
+        int r = 0;
+        for(int c=0;c<cols && r<rows;c+=K){
+            int w = c >>> 6;
+            int end = Math.min(c+K, cols);
+            int kb = 0;
+            for(int i=r;i<rows;i++) applied[order[i]] = 0;
+
+            //Find the pivots of the block
+            for(int col=c;col<end && r+kb<rows;col++){
+                long mask = 1L << col;
+                for(int i=r+kb;i<rows;i++){
+                    int row = order[i];
+                    while(applied[row] < kb){
+                        int p = applied[row]++;
+                        if((a[row*words+w] & (1L << pivotCols[p])) != 0){
+                            add(a, row*words, a, pivotRows[p]*words, w, words);
+                        }
+                    }
+                    if((a[row*words+w] & mask) != 0){
+                        order[i] = order[r+kb];
+                        order[r+kb] = row;
+                        pivotCols[kb] = col;
+                        pivotRows[kb] = row;
+                        kb++;
+                        break;
+                    }
+                }
+            }
+            if(kb == 0) continue;
+
+            //Reduce the pivot rows among themselves so they form an identity on the pivot columns
+            for(int p=kb-1;p>0;p--){
+                long mask = 1L << pivotCols[p];
+                for(int q=0;q<p;q++){
+                    if((a[pivotRows[q]*words+w] & mask) != 0){
+                        add(a, pivotRows[q]*words, a, pivotRows[p]*words, w, words);
+                    }
+                }
+            }
+
+            //Clear the block in the remaining rows
+            buildTable(table, a, pivotRows, kb, words, w);
+            for(int i=r+kb;i<rows;i++){
+                int row = order[i];
+                long word = a[row*words+w];
+                int index = 0;
+                for(int p=0;p<kb;p++){
+                    if((word & (1L << pivotCols[p])) != 0) index |= 1 << p;
+                }
+                if(index != 0) add(a, row*words, table, index*words, w, words);
+            }
+            r += kb;
+        }
+        return r;
+    }
+
+    /**
+     * Fills 'table' with all 2^k sums of the rows rows[0], ..., rows[k-1] of 'b', entry i being the sum of the rows
+     * given by the bits of i. Each entry is the previous entry with its lowest bit cleared plus a single row. The
+     * first 'fromWord' words of the entries are left zero.
+     */
+    private static void buildTable(long[] table, long[] b, int[] rows, int k, int words, int fromWord){
+        for(int i=1;i<(1 << k);i++){
+            int low = Integer.numberOfTrailingZeros(i);
+            System.arraycopy(table, (i & (i-1))*words, table, i*words, words);
+            add(table, i*words, b, rows[low]*words, fromWord, words);
+        }
+    }
+
+    /**
+     * Adds the row at 'src' to the row at 'dest', skipping the first 'fromWord' words.
+     */
+    private static void add(long[] dest, int d, long[] src, int s, int fromWord, int words){
+        for(int w=fromWord;w<words;w++) dest[d+w] ^= src[s+w];
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.matrix;
+
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import java.util.Arrays;
+
+/**
+ * A column with coefficients in the field Z/2Z, represented as a max-heap of the indices of its non-zero entries
+ * stored in a primitive long array. An index may be added several times; since pairs of equal indices sum to zero
+ * they are cancelled lazily once they reach the top of the heap. This is the working column used in the implicit
+ * matrix reduction of Ripser [1].
+ *
+ * [1] - http://ripser.org
+ */
+public class LongColumn {
+    private long[] heap;
+    private int size;
+
+    public LongColumn(){
+        this(16);
+    }
+
+    public LongColumn(int capacity){
+        this.heap = new long[Math.max(1, capacity)];
+    }
+
+    public void add(long index){
+        if(size == heap.length){
+            heap = Arrays.copyOf(heap, 2*heap.length);
+        }
+        int i = size++;
+        while(i > 0){
+            int parent = (i-1) >>> 1;
+            if(heap[parent] >= index) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = index;
+    }
+
+    public void addAll(LongList indices){
+        for(int i=0;i<indices.size();i++) add(indices.getLong(i));
+    }
+
+    /**
+     * Removes the largest element of the heap.
+     */
+    private void poll(){
+        long last = heap[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while(i < half){
+            int child = 2*i+1;
+            if(child+1 < size && heap[child+1] > heap[child]) child++;
+            if(last >= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+    }
+
+    /**
+     * Returns the largest index of the column which is non-zero, or -1 if the column is zero. Pairs of the
+     * largest index are cancelled, but the pivot itself is left in the column.
+     * @return
+     */
+    public long get_pivot(){
+        while(size > 0){
+            long top = heap[0];
+            //If the top index occurs more than once, one of the copies is a child of the root
+            if((size > 1 && heap[1] == top) || (size > 2 && heap[2] == top)){
+                poll();
+                poll();
+            }else{
+                return top;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes and returns the largest index of the column which is non-zero, or -1 if the column is zero.
+     * @return
+     */
+    public long pop_pivot(){
+        long pivot = get_pivot();
+        if(pivot != -1) poll();
+        return pivot;
+    }
+
+    public boolean isEmpty(){
+        return get_pivot() == -1;
+    }
+
+    /**
+     * Removes all indices from the column, keeping the allocated storage.
+     */
+    public void clear(){
+        size = 0;
+    }
+}
@@ -1,13 +1,16 @@
 package topcat.matrix;
 
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class PMatrix {
     int rows, cols;
-    List<Column<Integer>> row_vectors;
+    List<LongColumn> row_vectors;
 
     public PMatrix(BMatrix M){
         this.rows = M.rows;
@@ -16,31 +19,39 @@ public class PMatrix {
         for(int i=0;i<M.rows;i++){
             if(M.hasCreatedRow(i)){
                 if(M.getRow(i).getNumberOfNonZeroElements()>0){
-                    Column<Integer> indices = new Column<>();
-                    indices.addAll(M.getRow(i).getIndexSet());
+                    LongColumn indices = new LongColumn(M.getRow(i).getNumberOfNonZeroElements());
+                    addAll(indices, M.getRow(i));
                     this.row_vectors.add(indices);
                 }
             }
         }
     }
 
+    private static void addAll(LongColumn column, BVector v){
+        IntIterator iterator = v.getIndexSetIterator();
+        while(iterator.hasNext()) column.add(iterator.nextInt());
+    }
+
 
     public static int rank(BMatrix M){
         if(M==null) return 0;
-        List<List<Integer>> columns_to_reduce = new ArrayList<>();
-        for(int i=0;i<M.rows;i++)
-            if(M.hasCreatedRow(i) && M.getRow(i).getNumberOfNonZeroElements()>0)
-                columns_to_reduce.add(M.getRow(i).getIndexSet());
+        List<LongList> reduced_columns = new ArrayList<>();
         Long2IntOpenHashMap pivot_column_index = new Long2IntOpenHashMap();
-        for(Integer index_column_to_reduce = 0; index_column_to_reduce<columns_to_reduce.size();index_column_to_reduce++) {
-            Column<Integer> working_column= new Column<>();
-            working_column.addAll(columns_to_reduce.get(index_column_to_reduce));
+        LongColumn working_column = new LongColumn();
+        for(int i=0;i<M.rows;i++) {
+            if(!M.hasCreatedRow(i) || M.getRow(i).getNumberOfNonZeroElements() == 0) continue;
+            working_column.clear();
+            addAll(working_column, M.getRow(i));
             long pivot;
             while((pivot=working_column.get_pivot()) != -1) {
                 if(pivot_column_index.containsKey(pivot)){
-                    working_column.addAll(columns_to_reduce.get(pivot_column_index.get(pivot)));
+                    working_column.addAll(reduced_columns.get(pivot_column_index.get(pivot)));
                 }else{
-                    pivot_column_index.addTo(pivot, index_column_to_reduce);
+                    //Store the reduced column, whose largest index is the pivot
+                    LongList column = new LongArrayList();
+                    while((pivot=working_column.pop_pivot()) != -1) column.add(pivot);
+                    pivot_column_index.put(column.getLong(0), reduced_columns.size());
+                    reduced_columns.add(column);
                     break;
                 }
             }
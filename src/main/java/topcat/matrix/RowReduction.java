@@ -0,0 +1,197 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.matrix;
+
+import topcat.util.IntPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Gaussian elimination over Z/2Z on matrices whose rows are packed into 64-bit words. The rows of a matrix A, and
+ * of a matrix B on which the same row operations are performed, are copied once into word arrays and reduced in
+ * place, so no memory is allocated per row operation. A row operation is only performed on the rows that have the
+ * pivot bit set, and only on the words from the pivot onwards when the pivot is the lowest column of its row.
+ */
+class RowReduction {
+    /**
+     * Matrices that would need more words than this when packed are reduced on their BVector rows instead.
+     */
+    static final long MAX_PACKED_WORDS = 1L << 26;
+
+    private final int rows, aCols, bCols;
+    private final int aWords, bWords; //number of words per row
+    private final long[] a, b; //the rows of A and B, row i starts at i*aWords and i*bWords respectively
+
+    private RowReduction(int rows, int aCols, int bCols, long[] a, long[] b){
+        this.rows = rows;
+        this.aCols = aCols;
+        this.bCols = bCols;
+        this.aWords = BMatrix.words(aCols);
+        this.bWords = b == null ? 0 : BMatrix.words(bCols);
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * Copies the rows of A and B into word arrays.
+     * @param A
+     * @param B - may be null
+     * @return the packed matrices, or null if they are too large or have entries outside of their dimensions.
+     */
+    static RowReduction pack(BMatrix A, BMatrix B){
+        int rows = B == null ? A.rows : Math.max(A.rows, B.rows);
+        long size = (long) rows * (BMatrix.words(A.cols) + (B == null ? 0 : BMatrix.words(B.cols)));
+        if(size > MAX_PACKED_WORDS){
+            return null;
+        }
+        long[] a = A.toWords(rows, BMatrix.words(A.cols));
+        long[] b = B == null ? null : B.toWords(rows, BMatrix.words(B.cols));
+        if(a == null || (B != null && b == null)){
+            return null;
+        }
+        return new RowReduction(rows, A.cols, B == null ? 0 : B.cols, a, b);
+    }
+
+    /**
+     * Returns the index of the first non-zero word of row 'i' at or after word 'from', or -1 if there is none.
+     */
+    private int firstNonZeroWord(int i, int from){
+        int offset = i*aWords;
+        for(int w=from;w<aWords;w++){
+            if(a[offset+w] != 0) return w;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds row 'src' to row 'dest' in both A and B, skipping the words of A before 'fromWord' which are zero in 'src'.
+     */
+    private void addRow(int dest, int src, int fromWord){
+        int d = dest*aWords, s = src*aWords;
+        for(int w=fromWord;w<aWords;w++) a[d+w] ^= a[s+w];
+        if(b != null){
+            d = dest*bWords;
+            s = src*bWords;
+            for(int w=0;w<bWords;w++) b[d+w] ^= b[s+w];
+        }
+    }
+
+    /**
+     * Eliminates column 'pivot' from every row except 'i', adding row 'i' from word 'fromWord' onwards. Only the
+     * words of row 'i' before 'fromWord' may be skipped, so 'fromWord' is the word of the pivot only when the pivot
+     * is the lowest non-zero column of row 'i'.
+     */
+    private void eliminate(int i, int pivot, int fromWord){
+        int w = pivot >>> 6;
+        long mask = 1L << pivot;
+        for(int j=0;j<rows;j++){
+            if(j != i && (a[j*aWords+w] & mask) != 0){
+                addRow(j, i, fromWord);
+            }
+        }
+    }
+
+    /**
+     * Reduces the rows of A to reduced row echelon form, taking the pivot of each row to be its lowest non-zero
+     * column after the previous rows have been eliminated.
+     * @return a list of (row, column) pairs of the pivots.
+     */
+    List<IntPair> reduce(){
+        List<IntPair> pivots = new ArrayList<>();
+        for(int i=0;i<rows;i++){
+            int w = firstNonZeroWord(i, 0);
+            if(w < 0) continue;
+            int pivot = (w << 6) + Long.numberOfTrailingZeros(a[i*aWords+w]);
+            pivots.add(new IntPair(i, pivot));
+            eliminate(i, pivot, w);
+        }
+        return pivots;
+    }
+
+    /**
+     * Eliminates the given pivots from the other rows, in the order given. A pivot need not be the lowest column of
+     * its row, so whole rows are added.
+     * @param pivots
+     */
+    void reduce(List<IntPair> pivots){
+        for(IntPair p : pivots){
+            int i = p._1(), pivot = p._2();
+            if(i >= rows || firstNonZeroWord(i, 0) < 0) continue;
+            eliminate(i, pivot, 0);
+        }
+    }
+
+    /**
+     * Computes the rank of A by reducing it to row echelon form. Each row is reduced by the rows that own its
+     * lowest non-zero column until it is zero or its lowest column has no owner. Large matrices are reduced with
+     * the Method of Four Russians instead. A is destroyed in the process.
+     * @return
+     */
+    int rank(){
+        if(rows >= FourRussians.THRESHOLD && aCols >= FourRussians.THRESHOLD && b == null){
+            return FourRussians.rank(a, rows, aCols, aWords);
+        }
+        int[] pivotRow = new int[aCols];
+        Arrays.fill(pivotRow, -1);
+        int rank = 0;
+        for(int i=0;i<rows;i++){
+            int w = 0;
+            while((w = firstNonZeroWord(i, w)) >= 0){
+                int c = (w << 6) + Long.numberOfTrailingZeros(a[i*aWords+w]);
+                int p = pivotRow[c];
+                if(p < 0){
+                    pivotRow[c] = i;
+                    rank++;
+                    break;
+                }
+                addRow(i, p, w);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Writes the reduced rows back into A and B.
+     * @param A
+     * @param B - may be null
+     */
+    void unpack(BMatrix A, BMatrix B){
+        for(int i : A.getCreatedRowIndices()){
+            A.setRow(i, BVector.fromWords(aCols, a, i*aWords, aWords));
+        }
+        if(B != null){
+            for(int i=0;i<rows;i++){
+                if(B.hasCreatedRow(i) || firstNonZeroWord(b, i*bWords, bWords) >= 0){
+                    B.setRow(i, BVector.fromWords(bCols, b, i*bWords, bWords));
+                }
+            }
+        }
+    }
+
+    private static int firstNonZeroWord(long[] words, int offset, int n){
+        for(int w=0;w<n;w++){
+            if(words[offset+w] != 0) return w;
+        }
+        return -1;
+    }
+}
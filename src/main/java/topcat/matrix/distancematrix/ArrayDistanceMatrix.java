@@ -83,6 +83,11 @@ public class ArrayDistanceMatrix extends DistanceMatrix {
         return range(0, cols);
     }
 
+    @Override
+    public boolean supportsConcurrentWrites(){
+        return true;
+    }
+
     private static int[] range(int start, int end){
         int length = end-start;
         int[] arr = new int[length];
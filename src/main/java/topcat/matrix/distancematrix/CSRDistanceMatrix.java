@@ -0,0 +1,212 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.matrix.distancematrix;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sparse distance matrix in compressed sparse row form, where each row stores its set columns in a sorted array
+ * together with their values. Entries that are not set have the value Double.MAX_VALUE, as in SparseDistanceMatrix.
+ * Matrices are created with a Builder; afterwards only the values of set entries can be changed.
+ */
+public class CSRDistanceMatrix extends DistanceMatrix {
+    private final int[][] columns;
+    private final double[][] values;
+    private final int[] nonzero_rows;
+
+    private CSRDistanceMatrix(int rows, int cols, int[][] columns, double[][] values){
+        super(rows, cols);
+        this.columns = columns;
+        this.values = values;
+        int n_nonzero = 0;
+        for(int i=0;i<rows;i++) if(columns[i].length > 0) n_nonzero++;
+        this.nonzero_rows = new int[n_nonzero];
+        for(int i=0, k=0;i<rows;i++) if(columns[i].length > 0) nonzero_rows[k++] = i;
+    }
+
+    /**
+     * Copies the set entries of 'distanceMatrix'.
+     * @param distanceMatrix
+     * @return
+     */
+    public static CSRDistanceMatrix create(DistanceMatrix distanceMatrix){
+        Builder builder = new Builder(distanceMatrix.rows, distanceMatrix.cols);
+        for(int i : distanceMatrix.getNonZeroRows()){
+            for(int j : distanceMatrix.getNonZeroRowEntries(i)){
+                builder.add(i, j, distanceMatrix.get(i, j));
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public double get(int i, int j){
+        int p = Arrays.binarySearch(columns[i], j);
+        return p < 0 ? Double.MAX_VALUE : values[i][p];
+    }
+
+    /**
+     * Sets the value of the entry (i, j), which has to be set already. The sparsity pattern is fixed when the matrix
+     * is built, so a CSRDistanceMatrix cannot be filled by code that writes every entry, such as
+     * PointCloud.computeEuclideanDistances.
+     * @param i
+     * @param j
+     * @param val
+     * @throws IllegalArgumentException if the entry (i, j) is not set.
+     */
+    @Override
+    public void set(int i, int j, double val){
+        int p = Arrays.binarySearch(columns[i], j);
+        if(p < 0){
+            throw new IllegalArgumentException("Entry ("+i+", "+j+") is not part of the sparsity pattern.");
+        }
+        values[i][p] = val;
+    }
+
+    @Override
+    public void setRow(int i, List<Double> list){
+        for(int p=0;p<columns[i].length;p++){
+            values[i][p] = list.get(columns[i][p]);
+        }
+    }
+
+    @Override
+    public double[] getRow(int i){
+        double[] row = new double[cols];
+        Arrays.fill(row, Double.MAX_VALUE);
+        for(int p=0;p<columns[i].length;p++){
+            row[columns[i][p]] = values[i][p];
+        }
+        return row;
+    }
+
+    /**
+     * Returns the rows with set entries. The returned array is shared and must not be modified.
+     * @return
+     */
+    @Override
+    public int[] getNonZeroRows() {
+        return nonzero_rows;
+    }
+
+    /**
+     * Returns the sorted columns of the set entries of row 'i'. The returned array is shared and must not be modified.
+     * @param i
+     * @return
+     */
+    @Override
+    public int[] getNonZeroRowEntries(int i) {
+        return columns[i];
+    }
+
+    /**
+     * Returns the values of the set entries of row 'i', in the order of getNonZeroRowEntries. The returned array is
+     * shared and must not be modified.
+     * @param i
+     * @return
+     */
+    public double[] getNonZeroRowValues(int i){
+        return values[i];
+    }
+
+    /**
+     * Collects entries in any order and builds a CSRDistanceMatrix. If an entry is added more than once, the last
+     * value is kept.
+     */
+    public static class Builder {
+        private final int rows, cols;
+        private final IntArrayList[] columns;
+        private final DoubleArrayList[] values;
+
+        public Builder(int rows, int cols){
+            this.rows = rows;
+            this.cols = cols;
+            this.columns = new IntArrayList[rows];
+            this.values = new DoubleArrayList[rows];
+        }
+
+        public Builder add(int i, int j, double val){
+            if(j < 0 || j >= cols){
+                throw new IndexOutOfBoundsException("Column "+j+" is outside of the matrix.");
+            }
+            if(columns[i] == null){
+                columns[i] = new IntArrayList();
+                values[i] = new DoubleArrayList();
+            }
+            columns[i].add(j);
+            values[i].add(val);
+            return this;
+        }
+
+        /**
+         * Adds the entry (i, j) and the entry (j, i) with the value 'val'.
+         * @param i
+         * @param j
+         * @param val
+         * @return
+         */
+        public Builder addSymmetric(int i, int j, double val){
+            add(i, j, val);
+            if(i != j) add(j, i, val);
+            return this;
+        }
+
+        public CSRDistanceMatrix build(){
+            int[][] row_columns = new int[rows][];
+            double[][] row_values = new double[rows][];
+            for(int i=0;i<rows;i++){
+                if(columns[i] == null){
+                    row_columns[i] = new int[0];
+                    row_values[i] = new double[0];
+                    continue;
+                }
+                final int[] c = columns[i].toIntArray();
+                final double[] v = values[i].toDoubleArray();
+                //Stable, so that the last value of a repeated entry stays last
+                it.unimi.dsi.fastutil.Arrays.mergeSort(0, c.length, (a, b) -> Integer.compare(c[a], c[b]), (a, b) -> {
+                    int t = c[a];
+                    c[a] = c[b];
+                    c[b] = t;
+                    double s = v[a];
+                    v[a] = v[b];
+                    v[b] = s;
+                });
+                int size = 0;
+                for(int p=0;p<c.length;p++){
+                    if(size > 0 && c[size-1] == c[p]){
+                        v[size-1] = v[p];
+                    }else{
+                        c[size] = c[p];
+                        v[size++] = v[p];
+                    }
+                }
+                row_columns[i] = size == c.length ? c : Arrays.copyOf(c, size);
+                row_values[i] = size == v.length ? v : Arrays.copyOf(v, size);
+                columns[i] = null;
+                values[i] = null;
+            }
+            return new CSRDistanceMatrix(rows, cols, row_columns, row_values);
+        }
+    }
+}
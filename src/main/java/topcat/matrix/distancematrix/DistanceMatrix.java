@@ -21,16 +21,17 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package topcat.matrix.distancematrix;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import topcat.util.Pair;
+import topcat.util.Parallel;
 import topcat.util.Point;
+import topcat.util.PointCloud;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 public abstract class DistanceMatrix {
+
     public final int cols;
     public final int rows;
 
@@ -60,6 +61,14 @@ public abstract class DistanceMatrix {
      */
     public abstract int[] getNonZeroRowEntries(int i);
 
+    /**
+     * Returns true if distinct entries can be set from several threads at the same time.
+     * @return
+     */
+    public boolean supportsConcurrentWrites(){
+        return false;
+    }
+
     /**
      * Returns a collection of hashsets where the ith hashset contains the vertices
      * with ordering larger than i such that the value of (i, j) is less than or equal
@@ -85,16 +94,7 @@ public abstract class DistanceMatrix {
     }
 
     public static DistanceMatrix computeEuclideanDistanceMatrix(List<Point> points){
-        DistanceMatrix distanceMatrix = new ArrayDistanceMatrix(points.size(), points.size());
-        for(int i=0;i<points.size();i++){
-            distanceMatrix.set(i, i, 0);
-            for(int j=i+1;j<points.size();j++){
-                double d = euclideanDistance(points.get(i).getX(), points.get(j).getX());
-                distanceMatrix.set(i, j, d);
-                distanceMatrix.set(j, i, d);
-            }
-        }
-        return distanceMatrix;
+        return PointCloud.fromPoints(points).computeEuclideanDistanceMatrix();
     }
 
     public static double euclideanDistance(List<Double> a, List<Double> b){
@@ -118,65 +118,151 @@ public abstract class DistanceMatrix {
     }
 
 
-    public static DistanceMatrix codensityMatrix(DistanceMatrix distanceMatrix){
-        DistanceMatrix densityMatrix = new ArrayDistanceMatrix(distanceMatrix.rows, distanceMatrix.cols);
-        for(int r=0; r<distanceMatrix.rows;r++){
+    /**
+     * Computes the codensity matrix of 'distanceMatrix'. If c is the i:th nearest neighbor of r, the entry (r, c) is
+     * set to -i/d(r, c), and the entries below the diagonal are set to the maximum of the two values of the pair. The
+     * diagonal is set to minus the number of points. The rows are processed in parallel.
+     * @param distanceMatrix
+     * @return
+     */
+    public static DistanceMatrix codensityMatrix(final DistanceMatrix distanceMatrix){
+        final DistanceMatrix densityMatrix = new ArrayDistanceMatrix(distanceMatrix.rows, distanceMatrix.cols);
+        //The point of rank 0 in each row, which is not assigned a value
+        final int[] first = new int[distanceMatrix.rows];
+        forEachRow(distanceMatrix.rows, r -> {
             double[] row = distanceMatrix.getRow(r);
-
-            //Elements of the row with positions
-            List<Pair<Double, Integer>> elements = new ArrayList<>();
-            for(int i=0;i<row.length;i++){
-                elements.add(new Pair<>(row[i], i));
-            }
-            Collections.sort(elements, new Comparator<Pair<Double, Integer>>() {
-                @Override
-                public int compare(Pair<Double, Integer> o1, Pair<Double, Integer> o2) {
-                    return o1._1().compareTo(o2._1());
-                }
-            });
-
+            int[] order = sortRow(row);
+            first[r] = order[0];
             densityMatrix.set(r, r, -densityMatrix.rows);
-            //Set the nearest neighbors
-            for(int i=1;i<elements.size();i++){
-                if(elements.get(i)._2() < r){
-                    if(densityMatrix.get(elements.get(i)._2(), r) > -i/elements.get(i)._1()){
-                        densityMatrix.set(r, elements.get(i)._2(), densityMatrix.get(elements.get(i)._2(), r));
-                    }else{
-                        densityMatrix.set(r, elements.get(i)._2(), -i/elements.get(i)._1());
-                    }
-                }else{
-                    densityMatrix.set(r, elements.get(i)._2(), -i/elements.get(i)._1());
+            for(int i=1;i<row.length;i++){
+                densityMatrix.set(r, order[i], -i/row[order[i]]);
+            }
+        });
+        //Set the entries below the diagonal to the maximum of the pair, once all entries above it are final
+        forEachRow(distanceMatrix.rows, r -> {
+            for(int c=0;c<r && c<densityMatrix.cols;c++){
+                if(c == first[r]) continue;
+                if(densityMatrix.get(c, r) > densityMatrix.get(r, c)){
+                    densityMatrix.set(r, c, densityMatrix.get(c, r));
                 }
             }
-        }
+        });
         return densityMatrix;
     }
 
-    public static DistanceMatrix computeKNNMatrix(DistanceMatrix distanceMatrix){
-        DistanceMatrix densityMatrix = new ArrayDistanceMatrix(distanceMatrix.rows, distanceMatrix.cols);
-        for(int r=0; r<distanceMatrix.rows;r++){
+    /**
+     * Computes the matrix where the entry (r, c) is the rank of c among the nearest neighbors of r. The rows are
+     * processed in parallel.
+     * @param distanceMatrix
+     * @return
+     */
+    public static DistanceMatrix computeKNNMatrix(final DistanceMatrix distanceMatrix){
+        final DistanceMatrix densityMatrix = new ArrayDistanceMatrix(distanceMatrix.rows, distanceMatrix.cols);
+        forEachRow(distanceMatrix.rows, r -> {
             double[] row = distanceMatrix.getRow(r);
-
-            //Elements of the row with positions
-            List<Pair<Double, Integer>> elements = new ArrayList<>();
+            int[] order = sortRow(row);
             for(int i=0;i<row.length;i++){
-                elements.add(new Pair<>(row[i], i));
+                densityMatrix.set(r, order[i], i);
             }
-            Collections.sort(elements, new Comparator<Pair<Double, Integer>>() {
-                @Override
-                public int compare(Pair<Double, Integer> o1, Pair<Double, Integer> o2) {
-                    return o1._1().compareTo(o2._1());
-                }
-            });
+        });
+        return densityMatrix;
+    }
 
-            //Set the nearest neighbors
-            for(int i=0;i<elements.size();i++){
-                densityMatrix.set(r, elements.get(i)._2(), i);
-            }
+    /**
+     * Computes the matrix where the entry (r, c) is the rank of c among the nearest neighbors of r if the rank is less
+     * than 'k', and 'k' otherwise. Only the k nearest neighbors of each row are selected, using a bounded heap. The
+     * rows are processed in parallel.
+     * @param distanceMatrix
+     * @param k
+     * @return
+     */
+    public static DistanceMatrix computeKNNMatrix(final DistanceMatrix distanceMatrix, final int k){
+        if(k <= 0){
+            throw new IllegalArgumentException("The number of neighbors has to be positive.");
         }
+        final DistanceMatrix densityMatrix = new ArrayDistanceMatrix(distanceMatrix.rows, distanceMatrix.cols);
+        forEachRow(distanceMatrix.rows, r -> {
+            double[] row = distanceMatrix.getRow(r);
+            int[] heap = new int[Math.min(k, row.length)];
+            int size = selectNearest(row, heap);
+            for(int c=0;c<row.length;c++) densityMatrix.set(r, c, k);
+            //Pop the heap from the farthest neighbor
+            for(int i=size-1;i>=0;i--){
+                densityMatrix.set(r, heap[0], i);
+                heap[0] = heap[i];
+                siftDown(row, heap, 0, i);
+            }
+        });
         return densityMatrix;
     }
 
+    /**
+     * Returns true if the element 'a' of 'row' comes after the element 'b' in order of distance and position.
+     */
+    private static boolean after(double[] row, int a, int b){
+        int c = Double.compare(row[a], row[b]);
+        return c > 0 || (c == 0 && a > b);
+    }
+
+    /**
+     * Returns the positions of 'row' sorted by value, where equal values keep their order.
+     */
+    private static int[] sortRow(final double[] row){
+        int[] order = new int[row.length];
+        for(int i=0;i<row.length;i++) order[i] = i;
+        IntArrays.quickSort(order, 0, row.length, (a, b) -> after(row, a, b) ? 1 : (a == b ? 0 : -1));
+        return order;
+    }
+
+    /**
+     * Stores the positions of the heap.length smallest elements of 'row' in a max-heap in 'heap' and returns its size.
+     */
+    private static int selectNearest(double[] row, int[] heap){
+        int k = heap.length, size = 0;
+        for(int c=0;c<row.length;c++){
+            if(size < k){
+                heap[size] = c;
+                int i = size++;
+                while(i > 0 && after(row, heap[i], heap[(i-1)/2])){
+                    int t = heap[i];
+                    heap[i] = heap[(i-1)/2];
+                    heap[(i-1)/2] = t;
+                    i = (i-1)/2;
+                }
+            }else if(after(row, heap[0], c)){
+                heap[0] = c;
+                siftDown(row, heap, 0, size);
+            }
+        }
+        return size;
+    }
+
+    private static void siftDown(double[] row, int[] heap, int i, int size){
+        while(true){
+            int largest = i, left = 2*i+1, right = 2*i+2;
+            if(left < size && after(row, heap[left], heap[largest])) largest = left;
+            if(right < size && after(row, heap[right], heap[largest])) largest = right;
+            if(largest == i) return;
+            int t = heap[i];
+            heap[i] = heap[largest];
+            heap[largest] = t;
+            i = largest;
+        }
+    }
+
+    /**
+     * Runs 'task' for each row in parallel, with one block of consecutive rows per thread.
+     * @param rows
+     * @param task
+     */
+    private static void forEachRow(final int rows, final Parallel.Task task){
+        final int n_threads = Math.max(1, Math.min(rows, Runtime.getRuntime().availableProcessors()));
+        Parallel.forEach(n_threads, n_threads, t -> {
+            int start = (int) ((long) rows*t/n_threads), end = (int) ((long) rows*(t+1)/n_threads);
+            for(int r=start;r<end;r++) task.run(r);
+        });
+    }
+
     public List<List<Double>> toList(){
         List<List<Double>> dmat = new ArrayList<>();
         for(int i=0;i<this.rows;i++){
@@ -0,0 +1,196 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.matrix.distancematrix;
+
+import topcat.util.Point;
+import topcat.util.PointCloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A symmetric distance matrix that only stores the upper triangle, including the diagonal, in single or double
+ * precision. The entries are kept outside of the Java heap, either in direct buffers or in a memory-mapped file, and
+ * are split into segments so that matrices with more than 2^31 entries can be stored. Setting the entry (i, j) also
+ * sets the entry (j, i).
+ */
+public class TriangularDistanceMatrix extends DistanceMatrix {
+
+    public enum Precision {
+        FLOAT(Float.BYTES), DOUBLE(Double.BYTES);
+
+        final int bytes;
+
+        Precision(int bytes){
+            this.bytes = bytes;
+        }
+    }
+
+    /** Number of entries in each segment. */
+    private static final int SEGMENT_BITS = 26;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    private final Precision precision;
+    private final ByteBuffer[] segments;
+
+    /**
+     * Creates an n x n matrix stored in direct buffers.
+     * @param n
+     * @param precision
+     */
+    public TriangularDistanceMatrix(int n, Precision precision){
+        super(n, n);
+        this.precision = precision;
+        this.segments = new ByteBuffer[n_segments(n)];
+        long n_entries = size(n);
+        for(int s=0;s<segments.length;s++){
+            long entries = Math.min(SEGMENT_SIZE, n_entries-s*SEGMENT_SIZE);
+            segments[s] = ByteBuffer.allocateDirect((int) (entries*precision.bytes)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private TriangularDistanceMatrix(int n, Precision precision, ByteBuffer[] segments){
+        super(n, n);
+        this.precision = precision;
+        this.segments = segments;
+    }
+
+    /**
+     * Creates an n x n matrix backed by the file 'f', which is created or resized to fit the matrix. Entries that are
+     * already in the file are kept, so a matrix that has been written to a file can be opened again. The entries are
+     * stored big-endian, as in BinarySimplexFormat, so that the file can be read on any platform.
+     * @param f
+     * @param n
+     * @param precision
+     * @return
+     * @throws IOException
+     */
+    public static TriangularDistanceMatrix map(File f, int n, Precision precision) throws IOException{
+        ByteBuffer[] segments = new ByteBuffer[n_segments(n)];
+        long n_entries = size(n);
+        try(RandomAccessFile file = new RandomAccessFile(f, "rw"); FileChannel channel = file.getChannel()){
+            file.setLength(n_entries*precision.bytes);
+            for(int s=0;s<segments.length;s++){
+                long entries = Math.min(SEGMENT_SIZE, n_entries-s*SEGMENT_SIZE);
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, s*SEGMENT_SIZE*precision.bytes, entries*precision.bytes)
+                        .order(ByteOrder.BIG_ENDIAN);
+            }
+        }
+        return new TriangularDistanceMatrix(n, precision, segments);
+    }
+
+    /**
+     * Returns the number of entries in the upper triangle of an n x n matrix.
+     */
+    private static long size(int n){
+        return (long) n*(n+1)/2;
+    }
+
+    private static int n_segments(int n){
+        return (int) ((size(n)+SEGMENT_SIZE-1)/SEGMENT_SIZE);
+    }
+
+    /**
+     * Returns the position of the entry (i, j), i <= j, in the row-major upper triangle.
+     */
+    private long index(int i, int j){
+        return (long) i*rows-(long) i*(i-1)/2+(j-i);
+    }
+
+    @Override
+    public double get(int i, int j){
+        long k = i <= j ? index(i, j) : index(j, i);
+        ByteBuffer segment = segments[(int) (k >>> SEGMENT_BITS)];
+        int offset = (int) (k & (SEGMENT_SIZE-1))*precision.bytes;
+        return precision == Precision.FLOAT ? segment.getFloat(offset) : segment.getDouble(offset);
+    }
+
+    @Override
+    public void set(int i, int j, double val){
+        long k = i <= j ? index(i, j) : index(j, i);
+        ByteBuffer segment = segments[(int) (k >>> SEGMENT_BITS)];
+        int offset = (int) (k & (SEGMENT_SIZE-1))*precision.bytes;
+        if(precision == Precision.FLOAT){
+            segment.putFloat(offset, (float) val);
+        }else{
+            segment.putDouble(offset, val);
+        }
+    }
+
+    @Override
+    public void setRow(int i, List<Double> list){
+        for(int j=0;j<list.size();j++){
+            set(i, j, list.get(j));
+        }
+    }
+
+    @Override
+    public double[] getRow(int i){
+        double[] row = new double[cols];
+        for(int j=0;j<cols;j++){
+            row[j] = get(i, j);
+        }
+        return row;
+    }
+
+    @Override
+    public int[] getNonZeroRows() {
+        return range(rows);
+    }
+
+    @Override
+    public int[] getNonZeroRowEntries(int i) {
+        return range(cols);
+    }
+
+    @Override
+    public boolean supportsConcurrentWrites(){
+        return true;
+    }
+
+    private static int[] range(int length){
+        int[] arr = new int[length];
+        for(int i=0;i<length;i++){
+            arr[i] = i;
+        }
+        return arr;
+    }
+
+    public Precision getPrecision(){
+        return precision;
+    }
+
+    /**
+     * Computes the Euclidean distance matrix of 'points' in a triangular matrix stored in direct buffers.
+     * @param points
+     * @param precision
+     * @return
+     */
+    public static TriangularDistanceMatrix computeEuclideanDistanceMatrix(List<Point> points, Precision precision){
+        TriangularDistanceMatrix distanceMatrix = new TriangularDistanceMatrix(points.size(), precision);
+        PointCloud.fromPoints(points).computeEuclideanDistances(distanceMatrix);
+        return distanceMatrix;
+    }
+}
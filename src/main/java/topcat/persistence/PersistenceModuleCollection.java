@@ -26,6 +26,7 @@ import topcat.matrix.exception.NoSolutionException;
 import topcat.persistence.functor.Functor;
 import topcat.persistence.functor.exception.MalformedFunctorException;
 import topcat.persistence.homology.HomologyUtil;
+import topcat.persistence.homology.MinimalPresentation;
 import topcat.persistence.simplex.SimplexStorageStructure;
 import topcat.persistence.simplex.SimplicialComplex;
 import topcat.matrix.distancematrix.DistanceMatrix;
@@ -72,4 +73,22 @@ public class PersistenceModuleCollection extends ArrayList<PersistenceModule>{
         }
         return persistenceModuleCollection;
     }
+
+    /**
+     * Creates the persistence modules from minimal presentations of the homology modules, which only stores the
+     * generators and relations instead of a basis at each position of the grid. Requires at most two parameters.
+     * @param simplexStorageStructure
+     * @param filtrationValues
+     * @param maxDimension
+     * @return
+     */
+    public static PersistenceModuleCollection createFromMinimalPresentation(SimplexStorageStructure simplexStorageStructure,
+                                                                            List<List<Double>> filtrationValues, int maxDimension){
+        PersistenceModuleCollection persistenceModuleCollection = new PersistenceModuleCollection();
+        List<? extends Functor> functors = MinimalPresentation.compute(simplexStorageStructure, maxDimension);
+        for(int i=0; i<functors.size();i++) {
+            persistenceModuleCollection.add(new PersistenceModule(functors.get(i), i, filtrationValues));
+        }
+        return persistenceModuleCollection;
+    }
 }
@@ -63,6 +63,21 @@ public class FreeFunctor extends Functor {
         return getMap(u, v);
     }
 
+    @Override
+    public BMatrix getMap(int[] u, int[] v){
+        return getMap(new IntTuple(u), new IntTuple(v));
+    }
+
+    @Override
+    public BMatrix getMap(int[] u, int dim){
+        return getMap(new IntTuple(u), dim);
+    }
+
+    @Override
+    public int getDimension(int[] v){
+        return getDimension(new IntTuple(v));
+    }
+
     @Override
     public int getDimension(IntTuple v){
         if(v.hasNegativeElements(v)){
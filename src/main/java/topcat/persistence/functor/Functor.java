@@ -85,6 +85,18 @@ public class Functor {
         return w;
     }
 
+    /**
+     * Returns true if 'v' has no negative indices and no indices beyond the size of the domain.
+     * @param v
+     * @return
+     */
+    private boolean isInside(int[] v){
+        for(int i=0;i<v.length;i++){
+            if(v[i] < 0 || v[i] > size.get(i)) return false;
+        }
+        return true;
+    }
+
     /**
      * Returns true if tuple have indices outside of defined domain.
      * @param v
@@ -170,6 +182,19 @@ public class Functor {
         return maps.get(dim).get(parseTuple(v));
     }
 
+    /**
+     * Returns the map at position 'v' in direction 'dim'.
+     * @param v
+     * @param dim
+     * @return
+     */
+    public BMatrix getMap(int[] v, int dim){
+        if(!isInside(v)){
+            return getMap(new IntTuple(v), dim);
+        }
+        return maps.get(dim).get(v);
+    }
+
 
     /**
      * Sets the map 'A' at position 'v' in direction 'dim'.
@@ -184,6 +209,19 @@ public class Functor {
         maps.get(dim).set(v, A);
     }
 
+    /**
+     * Sets the map 'A' at position 'v' in direction 'dim'.
+     * @param v
+     * @param A
+     * @param dim
+     */
+    public void setMap(int[] v, BMatrix A, int dim){
+        if(!isInside(v)){
+            return;
+        }
+        maps.get(dim).set(v, A);
+    }
+
     /**
      * Returns the size domain of the functor.
      * @return
@@ -203,6 +241,17 @@ public class Functor {
         return maps.get(0).get(parseTuple(v)).cols;
     }
 
+    /**
+     * Returns the dimension of the vector space at position 'v'.
+     * @return
+     */
+    public int getDimension(int[] v){
+        if(!isInside(v)){
+            return getDimension(new IntTuple(v));
+        }
+        return maps.get(0).get(v).cols;
+    }
+
     /**
      * Returns the map from position 'from' to position 'to'.
      * @param from
@@ -210,24 +259,41 @@ public class Functor {
      * @return
      */
     public BMatrix getMap(IntTuple from, IntTuple to){
-        if(from.equals(to)){
-            return BMatrix.identity(getDimension(from));
+        return getMap(from.toArray(), to.toArray());
+    }
+
+    /**
+     * Returns the map from position 'from' to position 'to'.
+     * @param from
+     * @param to
+     * @return
+     */
+    public BMatrix getMap(int[] from, int[] to){
+        boolean equal = true;
+        for(int i=0;i<from.length;i++){
+            if(from[i] > to[i]){
+                return null;
+            }
+            equal &= from[i] == to[i];
         }
-        if(!from.leq(to)){
-            return null;
+        if(equal){
+            return BMatrix.identity(getDimension(from));
         }
         BMatrix A = null;
+        int[] v = Arrays.copyOf(from, from.length);
         try {
-            for (Pair<IntTuple, Integer> p : GridIterator.getPairSequence(from, to)) {
-                if (A == null){
-                    A = getMap(p._1(), p._2());
-                }
-                else {
-                    A = getMap(p._1(), p._2()).mult(A);
+            for(int i=0;i<v.length;i++){
+                for(;v[i]<to[i];v[i]++){
+                    if (A == null){
+                        A = getMap(v, i);
+                    }
+                    else {
+                        A = getMap(v, i).mult(A);
+                    }
                 }
             }
         }catch (WrongDimensionException wde){
-            log.error("Failed to compute map between points "+from+ " and "+to, wde);
+            log.error("Failed to compute map between points "+new IntTuple(from)+ " and "+new IntTuple(to), wde);
         }
         return A;
     }
@@ -238,12 +304,16 @@ public class Functor {
      */
     public List<Generator> getGenerators(){
         List<Generator> generators = new ArrayList<>();
-        for(IntTuple v : GridIterator.getSequence(size)){
+        GridCursor cursor = new GridCursor(size);
+        int[] u = new int[size.length()];
+        while(cursor.next()){
+            int[] v = cursor.position();
             try {
-                List<IntTuple> basis = IntTuple.getStandardBasisSequence(v.length());
-                BMatrix A = getMap(v.minus(basis.get(0)), v);
-                for(int i=1;i<basis.size();i++){
-                    A = BMatrix.concat(A, getMap(v.minus(basis.get(i)), v));
+                BMatrix A = null;
+                for(int i=0;i<v.length;i++){
+                    System.arraycopy(v, 0, u, 0, v.length);
+                    u[i]--;
+                    A = A == null ? getMap(u, v) : BMatrix.concat(A, getMap(u, v));
                 }
                 Pair<BMatrix, BMatrix> kerim = BMatrix.reduction(A);
                 //System.err.println(kerim._2());
@@ -252,7 +322,7 @@ public class Functor {
                     //System.err.println("Generatorbasis: \n"+generatorBasis);
                     generatorBasis = generatorBasis.subMatrix(kerim._2().rows, -1, 0, -1);
                     for (int k = 0; k < generatorBasis.rows; k++) {
-                        generators.add(new Generator(new IntTuple(v), generatorBasis.getRow(k)));
+                        generators.add(new Generator(cursor.toIntTuple(), generatorBasis.getRow(k)));
                     }
                 }
             }catch (NoSolutionException nse){
@@ -322,19 +392,23 @@ public class Functor {
         }
         Functor G = new Functor(size);
         Nat nat = new Nat(size);
-        for(IntTuple v : GridIterator.getSequence(size)){
-            Integer d = dims.get(v);
+        GridCursor cursor = new GridCursor(size);
+        while(cursor.next()){
+            int[] v = cursor.position();
+            int d = dims.get(v);
             try {
                 BMatrix A = BMatrix.concat(BMatrix.identity(d), new BMatrix(d, getDimension(v) - d));
                 nat.setMap(v, A.transpose());
             }catch (WrongDimensionException wde){
-                log.error("Failed to concatenate matrix at position "+v+" when constructing natural transformation.", wde);
+                log.error("Failed to concatenate matrix at position "+cursor.toIntTuple()+" when constructing natural transformation.", wde);
             }
-            for(int i=0;i<v.length();i++){
-                if(v.get(i).equals(size.get(i))){
+            for(int i=0;i<v.length;i++){
+                if(v[i] == size.get(i)){
                     G.setMap(v, BMatrix.identity(d), i);
                 }else{
-                    Integer dplus = dims.get(v.plus(IntTuple.getStandardBasisElement(v.length(), i)));
+                    v[i]++;
+                    int dplus = dims.get(v);
+                    v[i]--;
                     G.setMap(v, getMap(v, i).subMatrix(0, dplus, 0, d), i);
                 }
             }
@@ -362,15 +436,21 @@ public class Functor {
      * @param F
      */
     public static void verify(Functor F){
-        for(IntTuple v : GridIterator.getSequence(F.size)){
-            List<IntTuple> basis = IntTuple.getStandardBasisSequence(v.length());
-            for (int i = 0; i < basis.size(); i++) {
-                for (int j = i + 1; j < basis.size(); j++) {
-                    IntTuple w = v.plus(basis.get(i));
-                    IntTuple wp = v.plus(basis.get(j));
-                    IntTuple z = w.plus(basis.get(j));
+        GridCursor cursor = new GridCursor(F.size);
+        int r = F.size.length();
+        int[] w = new int[r], wp = new int[r], z = new int[r];
+        while(cursor.next()){
+            int[] v = cursor.position();
+            for (int i = 0; i < r; i++) {
+                for (int j = i + 1; j < r; j++) {
+                    System.arraycopy(v, 0, w, 0, r);
+                    w[i]++;
+                    System.arraycopy(v, 0, wp, 0, r);
+                    wp[j]++;
+                    System.arraycopy(w, 0, z, 0, r);
+                    z[j]++;
                     if(!F.getMap(w, z).mult(F.getMap(v, w)).equals(F.getMap(wp, z).mult(F.getMap(v, wp)))){
-                        System.out.println(w);
+                        System.out.println(new IntTuple(w));
                     }
                     assert(F.getMap(w, z).mult(F.getMap(v, w)).equals(F.getMap(wp, z).mult(F.getMap(v, wp))));
                 }
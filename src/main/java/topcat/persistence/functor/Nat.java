@@ -24,6 +24,7 @@ import topcat.matrix.BMatrix;
 import topcat.matrix.exception.WrongDimensionException;
 import topcat.persistence.functor.exception.MalformedNaturalTransformation;
 import topcat.util.Grid;
+import topcat.util.GridCursor;
 import topcat.util.GridIterator;
 import topcat.util.IntTuple;
 import topcat.util.Pair;
@@ -51,6 +52,14 @@ public class Nat {
         return maps.get(v);
     }
 
+    public void setMap(int[] v, BMatrix A){
+        maps.set(v, A);
+    }
+
+    public BMatrix getMap(int[] v){
+        return maps.get(v);
+    }
+
     public IntTuple getSize(){
         return size;
     }
@@ -63,11 +72,14 @@ public class Nat {
      * @return
      */
     public static void verify(Functor F, Functor G, Nat nat) throws WrongDimensionException, MalformedNaturalTransformation{
-        for(IntTuple v : GridIterator.getSequence(G.getSize())){
-            List<IntTuple> basis = IntTuple.getStandardBasisSequence(v.length());
-            for (int i = 0; i < basis.size(); i++) {
-                IntTuple w = v.plus(basis.get(i));
-                if(w.leq(nat.size)) {
+        GridCursor cursor = new GridCursor(G.getSize());
+        int[] w = new int[G.getSize().length()];
+        while(cursor.next()){
+            int[] v = cursor.position();
+            for (int i = 0; i < v.length; i++) {
+                System.arraycopy(v, 0, w, 0, v.length);
+                w[i]++;
+                if(w[i] <= nat.size.get(i)) {
                     assert (nat.getMap(w).mult(F.getMap(v, w)).equals(G.getMap(v, w).mult(nat.getMap(v))));
                 }
             }
@@ -0,0 +1,223 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.functor;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import topcat.matrix.BMatrix;
+import topcat.matrix.BVector;
+import topcat.matrix.LongColumn;
+import topcat.util.IntTuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A functor given by a presentation, i.e a list of graded generators and a list of graded relations. The vector space
+ * at a position v is the span of the generators at grades less than or equal to v modulo the span of the relations at
+ * grades less than or equal to v. The maps are computed on demand, so the memory scales with the size of the
+ * presentation rather than with the size of the grid.
+ */
+public class PresentedFunctor extends Functor {
+    private static final int CACHE_SIZE = 256;
+
+    private final List<IntTuple> generators;
+    private final List<IntTuple> relationGrades;
+    private final List<LongList> relations;
+    private final Map<IntTuple, Quotient> cache = new LinkedHashMap<IntTuple, Quotient>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IntTuple, Quotient> eldest){
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param size - the size of the grid.
+     * @param generators - the grade of each generator.
+     * @param relationGrades - the grade of each relation.
+     * @param relations - each relation as the list of generators (by position in 'generators') it is the sum of.
+     */
+    public PresentedFunctor(IntTuple size, List<IntTuple> generators, List<IntTuple> relationGrades, List<LongList> relations){
+        this.size = size;
+        this.generators = generators;
+        this.relationGrades = relationGrades;
+        this.relations = relations;
+    }
+
+    public List<IntTuple> getGeneratorGrades(){
+        return generators;
+    }
+
+    public List<IntTuple> getRelationGrades(){
+        return relationGrades;
+    }
+
+    public List<LongList> getRelations(){
+        return relations;
+    }
+
+    /**
+     * The relations at grades less than or equal to a position in echelon form, and the coordinate of each generator
+     * in the induced basis of the quotient (or -1 if the generator is a pivot or not present).
+     */
+    private class Quotient{
+        Long2ObjectOpenHashMap<LongList> reduced = new Long2ObjectOpenHashMap<>();
+        int[] coordinate = new int[generators.size()];
+        int dimension = 0;
+
+        Quotient(IntTuple v){
+            LongColumn working_column = new LongColumn();
+            for(int i=0;i<relations.size();i++){
+                if(!relationGrades.get(i).leq(v)) continue;
+                working_column.clear();
+                working_column.addAll(relations.get(i));
+                long pivot;
+                while((pivot = working_column.get_pivot()) != -1){
+                    if(!reduced.containsKey(pivot)){
+                        LongList column = new LongArrayList();
+                        while((pivot = working_column.pop_pivot()) != -1) column.add(pivot);
+                        reduced.put(column.getLong(0), column);
+                        break;
+                    }
+                    working_column.addAll(reduced.get(pivot));
+                }
+            }
+            Arrays.fill(coordinate, -1);
+            for(int i=0;i<generators.size();i++){
+                if(generators.get(i).leq(v) && !reduced.containsKey(i)) coordinate[i] = dimension++;
+            }
+        }
+
+        /**
+         * Returns the coordinates of the generator 'g' in the quotient.
+         */
+        IntList normalForm(long g, LongColumn working_column){
+            IntList coordinates = new IntArrayList();
+            working_column.clear();
+            working_column.add(g);
+            long pivot;
+            while((pivot = working_column.pop_pivot()) != -1){
+                LongList column = reduced.get(pivot);
+                if(column == null){
+                    coordinates.add(coordinate[(int) pivot]);
+                }else{
+                    for(int j=1;j<column.size();j++) working_column.add(column.getLong(j));
+                }
+            }
+            return coordinates;
+        }
+    }
+
+    private Quotient getQuotient(IntTuple v){
+        synchronized (cache) {
+            Quotient quotient = cache.get(v);
+            if (quotient == null) {
+                quotient = new Quotient(v);
+                cache.put(new IntTuple(v), quotient);
+            }
+            return quotient;
+        }
+    }
+
+    @Override
+    public int getDimension(IntTuple v){
+        if(v.hasNegativeElements(v)){
+            return 0;
+        }
+        return getQuotient(v).dimension;
+    }
+
+    @Override
+    public BMatrix getMap(IntTuple u, IntTuple v){
+        if(u.equals(v)){
+            return BMatrix.identity(getDimension(u));
+        }
+        if(!u.leq(v)){
+            return null;
+        }
+        Quotient from = getQuotient(u);
+        Quotient to = getQuotient(v);
+        BMatrix A = new BMatrix(to.dimension, from.dimension);
+        LongColumn working_column = new LongColumn();
+        for(int i=0;i<generators.size();i++){
+            if(from.coordinate[i] == -1) continue;
+            IntList coordinates = to.normalForm(i, working_column);
+            for(int j=0;j<coordinates.size();j++) A.set(coordinates.getInt(j), from.coordinate[i], true);
+        }
+        return A;
+    }
+
+    @Override
+    public BMatrix getMap(IntTuple u, int dim){
+        return getMap(u, u.plus(IntTuple.getStandardBasisElement(u.length(), dim)));
+    }
+
+    @Override
+    public BMatrix getMap(int[] u, int[] v){
+        return getMap(new IntTuple(u), new IntTuple(v));
+    }
+
+    @Override
+    public BMatrix getMap(int[] u, int dim){
+        return getMap(new IntTuple(u), dim);
+    }
+
+    @Override
+    public int getDimension(int[] v){
+        return getDimension(new IntTuple(v));
+    }
+
+    /**
+     * Returns the rank of the map from position 'u' to position 'v'.
+     * @param u
+     * @param v
+     * @return
+     */
+    public int rank(IntTuple u, IntTuple v){
+        BMatrix A = getMap(u, v);
+        if(A == null || A.rows == 0 || A.cols == 0) return 0;
+        return BMatrix.rank(A);
+    }
+
+    /**
+     * The generators of a minimal presentation are a minimal set of generators of the functor.
+     * @return
+     */
+    @Override
+    public List<Generator> getGenerators(){
+        List<Generator> gens = new ArrayList<>();
+        for(int i=0;i<generators.size();i++){
+            Quotient quotient = getQuotient(generators.get(i));
+            //A generator that is zero at its own grade is redundant, which does not happen in a minimal presentation
+            if(quotient.coordinate[i] == -1) continue;
+            BVector v = new BVector(quotient.dimension);
+            v.set(quotient.coordinate[i], true);
+            gens.add(new Generator(generators.get(i), v));
+        }
+        return gens;
+    }
+}
@@ -20,6 +20,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package topcat.persistence.homology;
 
+import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,13 +28,14 @@ import topcat.persistence.functor.Functor;
 import topcat.persistence.functor.Nat;
 import topcat.persistence.functor.exception.MalformedFunctorException;
 import topcat.matrix.BMatrix;
+import topcat.matrix.BVector;
 import topcat.matrix.exception.NoSolutionException;
 import topcat.matrix.exception.WrongDimensionException;
-import topcat.persistence.simplex.Simplex;
 import topcat.persistence.simplex.SimplexStorageStructure;
-import topcat.util.Grid;
+import topcat.util.IntGrid;
 import topcat.util.GridIterator;
 import topcat.util.IntTuple;
+import topcat.util.Parallel;
 import topcat.util.Pair;
 
 import java.util.*;
@@ -47,27 +49,60 @@ public class HomologyUtil {
 
     /**
      * Computes the inclusion map C^i_n \hookrightarrow C^{i+j}_n.
+     *
+     * The lists are usually both sorted in the same order, e.g simplices from getSimplicesLEQThan or generators
+     * from Generator.getGensLEQThan, in which case 'lower' is a subsequence of 'current' and the map is computed by
+     * merging the two lists. Otherwise the positions of the elements of 'lower' are looked up in a hash map.
      * @param lower the simplices in C^i_n
      * @param current the simplices in C^{i+j}_n
      * @return
      */
     public static BMatrix computeInclusionMap(List<? extends Object> lower, List<? extends Object> current){
+        BMatrix A = new BMatrix(current.size(), lower.size());
         if(lower.size() == 0){
-            return new BMatrix(current.size(), lower.size());
+            return A;
         }
-        BMatrix A = new BMatrix(current.size(), lower.size());
+        int i = 0, j = 0;
+        while(i < current.size() && j < lower.size()){
+            if(current.get(i).equals(lower.get(j))) A.setRow(i, BVector.unit(lower.size(), j++));
+            i++;
+        }
+        if(j == lower.size()){
+            return A;
+        }
+
+        A = new BMatrix(current.size(), lower.size());
         Object2IntOpenHashMap<Object> lowerMap = new Object2IntOpenHashMap<>();
-        for(int i=0;i<lower.size();i++){
+        for(i=0;i<lower.size();i++){
             lowerMap.put(lower.get(i), i);
         }
-        for(int i=0;i<current.size();i++){
+        for(i=0;i<current.size();i++){
             if(lowerMap.containsKey(current.get(i))){
-                A.set(i, lowerMap.getInt(current.get(i)), true);
+                A.setRow(i, BVector.unit(lower.size(), lowerMap.getInt(current.get(i))));
             }
         }
         return A;
     }
 
+    /**
+     * Computes the inclusion map from the span of the simplices with indexes 'lower' into the span of the simplices
+     * with indexes 'current' by merging the two sorted lists.
+     * @param lower
+     * @param current
+     * @return
+     */
+    public static BMatrix computeInclusionMap(LongList lower, LongList current){
+        BMatrix A = new BMatrix(current.size(), lower.size());
+        int i = 0, j = 0;
+        while(i < current.size() && j < lower.size()){
+            long c = current.getLong(i), l = lower.getLong(j);
+            if(c == l) A.setRow(i++, BVector.unit(lower.size(), j++));
+            else if(c < l) i++;
+            else j++;
+        }
+        return A;
+    }
+
     /**
      * Computes the chain functors C_n: Q^2 \to Vect_K for each n <= 'maxdimension'
      * @param simplexStorageStructure
@@ -77,16 +112,19 @@ public class HomologyUtil {
      * @throws MalformedFunctorException
      * @throws WrongDimensionException
      */
-    private static List<Grid<Integer>> computeChainFunctorDimensions(final SimplexStorageStructure simplexStorageStructure, IntTuple size, int maxDimension) throws MalformedFunctorException {
+    private static List<IntGrid> computeChainFunctorDimensions(final SimplexStorageStructure simplexStorageStructure, IntTuple size, int maxDimension) throws MalformedFunctorException {
         log.debug("Starting to compute chain functor dimensions...");
-        List<Grid<Integer>> chainFunctors = new ArrayList<>();
+        List<IntGrid> chainFunctors = new ArrayList<>();
 
         for(int k=0;k<maxDimension+1;k++){
-            final Grid<Integer> grid = Grid.create(size);
+            final IntGrid grid = new IntGrid(size);
             //Compute the maps
+            int last = size.length()-1;
+            LongList simplices = null;
             for(IntTuple v : GridIterator.getSequence(size)) {
-                grid.set(v, simplexStorageStructure.getSimplicesLEQThan(k, v).size());
-
+                simplices = v.get(last) > 0 ? simplexStorageStructure.getIndexesLEQThan(k, v, simplices, last)
+                        : simplexStorageStructure.getIndexesLEQThan(k, v);
+                grid.setInt(v, simplices.size());
             }
             chainFunctors.add(grid);
         }
@@ -104,25 +142,38 @@ public class HomologyUtil {
      * @throws NoSolutionException
      */
     public static List<Functor> computeHomologyFunctors(final SimplexStorageStructure simplexStorageStructure, final IntTuple size, final int maxDimension) throws MalformedFunctorException, NoSolutionException{
+        return computeHomologyFunctors(simplexStorageStructure, size, maxDimension, true);
+    }
+
+    /**
+     * Computes the homology functors for each dimension less than 'maxdimension'.
+     * @param simplexStorageStructure
+     * @param size
+     * @param maxDimension
+     * @param shortcuts - whether to use the clearing and apparent pair optimizations in the reduction, turn off to verify.
+     * @throws WrongDimensionException
+     * @throws NoSolutionException
+     */
+    public static List<Functor> computeHomologyFunctors(final SimplexStorageStructure simplexStorageStructure, final IntTuple size, final int maxDimension, final boolean shortcuts) throws MalformedFunctorException, NoSolutionException{
+        if(!simplexStorageStructure.isSimplicial()){
+            //The coboundaries are enumerated implicitly from the simplices, which requires a simplicial complex
+            return computeHomologyFunctorsIncremental(simplexStorageStructure, size, maxDimension);
+        }
         log.debug("Starting to compute homology functors...");
 
         //The natural transformations from the chain functors to a basis change of the chain modules
         final List<Nat> naturalTransformation = new ArrayList<>();
         final List<Nat> naturalTransformation_inverse = new ArrayList<>();
 
-        //The persistence modules, i.e homology of the multifiltration
-        List<Functor> homfunctors = new ArrayList<>();
-
         for(int k=0;k<maxDimension;k++){
             naturalTransformation.add(new Nat(size));
             naturalTransformation_inverse.add(new Nat(size));
-            homfunctors.add(new Functor(size));
         }
 
         //The dimension of the basis for the homology in C(v) for each v in N^r
-        final List<Grid<Integer>> homologyDimension = new ArrayList<>();
+        final List<IntGrid> homologyDimension = new ArrayList<>();
         for(int i=0;i<maxDimension;i++) {
-            homologyDimension.add(Grid.create(size));
+            homologyDimension.add(new IntGrid(size));
         }
 
         log.debug("Starting to compute basis change in each position...");
@@ -131,7 +182,7 @@ public class HomologyUtil {
         List<Future> futures = new ArrayList<>();
         List<HomologyWorker> workers = new ArrayList<>();
         for(IntTuple v : GridIterator.getSequence(size)){
-            HomologyWorker worker = new HomologyWorker(simplexStorageStructure, v, maxDimension);
+            HomologyWorker worker = new HomologyWorker(simplexStorageStructure, v, maxDimension, shortcuts);
             workers.add(worker);
             futures.add(exec.submit(worker));
         }
@@ -156,7 +207,7 @@ public class HomologyUtil {
 
         for(HomologyWorker worker : workers){
             for(int k=0;k<maxDimension;k++){
-                homologyDimension.get(k).set(worker.v, worker.homologyDimension[k]);
+                homologyDimension.get(k).setInt(worker.v, worker.homologyDimension[k]);
                 naturalTransformation.get(k).setMap(worker.v, worker.naturalTransformation[k]);
                 naturalTransformation_inverse.get(k).setMap(worker.v, worker.naturalTransformation_inverse[k]);
             }
@@ -164,27 +215,109 @@ public class HomologyUtil {
 
         log.debug("Finished computing basis change.");
 
-        log.debug("Starting to apply basis change...");
-        for(int k=0;k<homfunctors.size();k++){
-            Functor H = homfunctors.get(k);
-            for(IntTuple v : GridIterator.getSequence(size)){
-                List<Simplex> currentSimplices = simplexStorageStructure.getSimplicesLEQThan(k, v);
-                for(int i=0;i<v.length();i++){
-                    BMatrix inclusionMap = computeInclusionMap(currentSimplices, simplexStorageStructure.getSimplicesLEQThan(k, v.plus(IntTuple.getStandardBasisElement(v.length(), i))));
-                    if(v.get(i).equals(size.get(i))){
-                        H.setMap(v, BMatrix.identity(naturalTransformation.get(k).getMap(v).rows), i);
-                    }else{
-                        H.setMap(v, inclusionMap.mult(naturalTransformation_inverse.get(k).getMap(v)), i);
-                    }
-                    if(v.get(i) > 0){
-                        IntTuple w = v.minus(IntTuple.getStandardBasisElement(v.length(), i));
-                        BMatrix hmap = H.getMap(w, i);
-                        BMatrix natmap = naturalTransformation.get(k).getMap(v);
-                        H.setMap(w, natmap.mult(hmap), i);
-                    }
+        return applyBasisChange(simplexStorageStructure, size, homologyDimension, naturalTransformation, naturalTransformation_inverse);
+    }
+
+    /**
+     * Computes the homology functors for each dimension less than 'maxdimension' by walking the grid along monotone
+     * paths in the last coordinate and extending the reduction from the predecessor at each step, see
+     * {@link IncrementalHomologyWorker}. The paths are computed in parallel.
+     * @param simplexStorageStructure
+     * @param size
+     * @param maxDimension
+     * @throws WrongDimensionException
+     * @throws NoSolutionException
+     */
+    public static List<Functor> computeHomologyFunctorsIncremental(final SimplexStorageStructure simplexStorageStructure, final IntTuple size, final int maxDimension) throws MalformedFunctorException, NoSolutionException{
+        log.debug("Starting to compute homology functors incrementally...");
+
+        final List<Nat> naturalTransformation = new ArrayList<>();
+        final List<Nat> naturalTransformation_inverse = new ArrayList<>();
+        final List<IntGrid> homologyDimension = new ArrayList<>();
+        for(int k=0;k<maxDimension;k++){
+            naturalTransformation.add(new Nat(size));
+            naturalTransformation_inverse.add(new Nat(size));
+            homologyDimension.add(new IntGrid(size));
+        }
+
+        //One path along the last coordinate for each position in the remaining coordinates
+        int last = size.length()-1;
+        IntTuple start = new IntTuple(size);
+        start.set(last, 0);
+        List<List<IntTuple>> paths = new ArrayList<>();
+        for(IntTuple u : GridIterator.getSequence(start)){
+            if(u.get(last) != 0) continue;
+            IntTuple end = new IntTuple(u);
+            end.set(last, size.get(last));
+            paths.add(GridIterator.getSequence(u, end));
+        }
+
+        log.debug("Starting to compute basis change along "+paths.size()+" paths...");
+        int n_threads = 2*(Runtime.getRuntime().availableProcessors() < 5 ? 5 : Runtime.getRuntime().availableProcessors());
+        final List<IncrementalHomologyWorker> workers = new ArrayList<>();
+        for(List<IntTuple> path : paths){
+            workers.add(new IncrementalHomologyWorker(simplexStorageStructure, path, maxDimension));
+        }
+        Parallel.forEach(workers.size(), n_threads, t -> workers.get(t).run());
+
+        for(IncrementalHomologyWorker worker : workers){
+            for(int t=0;t<worker.path.size();t++){
+                IntTuple v = worker.path.get(t);
+                for(int k=0;k<maxDimension;k++){
+                    homologyDimension.get(k).setInt(v, worker.homologyDimension[t][k]);
+                    naturalTransformation.get(k).setMap(v, worker.naturalTransformation[t][k]);
+                    naturalTransformation_inverse.get(k).setMap(v, worker.naturalTransformation_inverse[t][k]);
                 }
             }
         }
+        log.debug("Finished computing basis change.");
+
+        return applyBasisChange(simplexStorageStructure, size, homologyDimension, naturalTransformation, naturalTransformation_inverse);
+    }
+
+    /**
+     * Applies the basis change given by 'naturalTransformation' to the chain functors and restricts the result to
+     * the homology.
+     * @param simplexStorageStructure
+     * @param size
+     * @param homologyDimension - the dimension of the homology at each position, for each dimension.
+     * @param naturalTransformation
+     * @param naturalTransformation_inverse
+     * @return
+     * @throws MalformedFunctorException
+     * @throws NoSolutionException
+     */
+    private static List<Functor> applyBasisChange(final SimplexStorageStructure simplexStorageStructure, final IntTuple size,
+                                                  List<IntGrid> homologyDimension, List<Nat> naturalTransformation,
+                                                  List<Nat> naturalTransformation_inverse) throws MalformedFunctorException, NoSolutionException{
+        int maxDimension = homologyDimension.size();
+
+        //The persistence modules, i.e homology of the multifiltration
+        List<Functor> homfunctors = new ArrayList<>();
+        for(int k=0;k<maxDimension;k++){
+            homfunctors.add(new Functor(size));
+        }
+
+        log.debug("Starting to apply basis change...");
+        //One task for each dimension and each line along the last coordinate, so that the simplices of a position
+        //can be reused as the upper simplices of its predecessor. Every task writes a disjoint set of positions of
+        //the dense functor grids and the natural transformations are only read, so no further locking is needed.
+        final int last = size.length()-1;
+        IntTuple start = new IntTuple(size);
+        start.set(last, 0);
+        List<int[]> lines = new ArrayList<>();
+        for(IntTuple u : GridIterator.getSequence(start)){
+            if(u.get(last) == 0) lines.add(u.toArray());
+        }
+
+        final List<BasisChangeWorker> workers = new ArrayList<>();
+        for(int k=0;k<maxDimension;k++){
+            for(int[] line : lines){
+                workers.add(new BasisChangeWorker(simplexStorageStructure, size, k, line, homfunctors.get(k),
+                        naturalTransformation.get(k), naturalTransformation_inverse.get(k)));
+            }
+        }
+        Parallel.forEach(workers.size(), t -> workers.get(t).run());
         log.debug("Finished applying basis change.");
 
         log.debug("Starting verification...");
@@ -201,4 +334,55 @@ public class HomologyUtil {
         log.debug("Finished computing homology functors.");
         return homfunctors;
     }
+
+    /**
+     * Computes the maps of the basis changed chain functor in dimension 'k' starting in the positions of a line along
+     * the last coordinate, i.e the map from v to v+e_i is natmap(v+e_i)*inclusion*natmap^{-1}(v).
+     */
+    private static class BasisChangeWorker implements Runnable {
+        private final SimplexStorageStructure simplexStorageStructure;
+        private final IntTuple size;
+        private final int k;
+        private final int[] line;
+        private final Functor H;
+        private final Nat naturalTransformation;
+        private final Nat naturalTransformation_inverse;
+
+        BasisChangeWorker(SimplexStorageStructure simplexStorageStructure, IntTuple size, int k, int[] line, Functor H,
+                          Nat naturalTransformation, Nat naturalTransformation_inverse){
+            this.simplexStorageStructure = simplexStorageStructure;
+            this.size = size;
+            this.k = k;
+            this.line = line;
+            this.H = H;
+            this.naturalTransformation = naturalTransformation;
+            this.naturalTransformation_inverse = naturalTransformation_inverse;
+        }
+
+        @Override
+        public void run(){
+            int last = line.length-1;
+            int[] v = line.clone();
+            int[] w = new int[v.length];
+            LongList nextSimplices = null;
+            for(int t=0;t<=size.get(last);t++){
+                v[last] = t;
+                //The simplices at v were computed as the upper simplices of v - e_last in the previous step
+                LongList currentSimplices = t > 0 ? nextSimplices : simplexStorageStructure.getIndexesLEQThan(k, new IntTuple(v));
+                for(int i=0;i<v.length;i++){
+                    if(v[i] == size.get(i)){
+                        H.setMap(v, BMatrix.identity(naturalTransformation.getMap(v).rows), i);
+                        continue;
+                    }
+                    System.arraycopy(v, 0, w, 0, v.length);
+                    w[i]++;
+                    LongList upperSimplices = simplexStorageStructure.getIndexesLEQThan(k, new IntTuple(w), currentSimplices, i);
+                    if(i == last) nextSimplices = upperSimplices;
+                    BMatrix inclusionMap = computeInclusionMap(currentSimplices, upperSimplices);
+                    BMatrix natmap = naturalTransformation.getMap(w);
+                    H.setMap(v, natmap.mult(inclusionMap.mult(naturalTransformation_inverse.getMap(v))), i);
+                }
+            }
+        }
+    }
 }
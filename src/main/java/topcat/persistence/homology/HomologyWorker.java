@@ -22,13 +22,15 @@ package topcat.persistence.homology;
 
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import topcat.matrix.BMatrix;
 import topcat.matrix.BVector;
-import topcat.matrix.Column;
-import topcat.persistence.simplex.Simplex;
+import topcat.matrix.LongColumn;
 import topcat.persistence.simplex.SimplexStorageStructure;
 import topcat.util.BinomialCoeffTable;
 import topcat.util.IntTuple;
@@ -43,15 +45,27 @@ public class HomologyWorker implements Runnable{
         public static Logger log = LoggerFactory.getLogger(topcat.persistence.homology.HomologyWorker.class);
         int maxDimension;
         IntTuple v;
-        List<List<Simplex>> chain = new ArrayList<>();
+        List<LongList> chain = new ArrayList<>();
         int[] homologyDimension;
         BMatrix[] naturalTransformation;
         BMatrix[] naturalTransformation_inverse;
         SimplexStorageStructure simplexStorageStructure;
         BinomialCoeffTable binomialCoeffTable;
+        boolean shortcuts;
 
     HomologyWorker(SimplexStorageStructure simplexStorageStructure, IntTuple v, int maxDimension) {
+        this(simplexStorageStructure, v, maxDimension, true);
+    }
+
+    /**
+     * @param shortcuts - if true the reduction uses the clearing and apparent pair optimizations of Ripser [1]. Turning
+     *                  them off reduces every column in full, which is useful when verifying results.
+     *
+     * [1] - http://ripser.org
+     */
+    HomologyWorker(SimplexStorageStructure simplexStorageStructure, IntTuple v, int maxDimension, boolean shortcuts) {
             this.maxDimension = maxDimension;
+            this.shortcuts = shortcuts;
             this.v = v;
             this.homologyDimension = new int[maxDimension];
             this.naturalTransformation = new BMatrix[maxDimension];
@@ -61,20 +75,21 @@ public class HomologyWorker implements Runnable{
 
             //For each index in the grid we compute the homology up to dimension 'maxdimension'
             for (int k = 0; k <= maxDimension; k++) {
-                chain.add(simplexStorageStructure.getSimplicesLEQThan(k, v));
+                chain.add(simplexStorageStructure.getIndexesLEQThan(k, v));
             }
         }
 
     /**
-     * Adds the coboundary of 's' to the current column 'working_columns' and returns the largest index where the column
-     * is non-zero.
+     * Adds the coboundary of the simplex of dimension 'dim' with index 's' to the current column 'working_columns' and
+     * returns the largest index where the column is non-zero, or -1 if the column is zero.
      * @param s
+     * @param dim
      * @param index_lookup
      * @param working_coboundary
      * @return
      */
-    public Long add_coboundary_and_get_pivot(Simplex s, LongOpenHashSet index_lookup, Column<Long> working_coboundary){
-        SimplexCoboundaryEnumerator enumerator = new SimplexCoboundaryEnumerator(s, simplexStorageStructure.getNumberOfVertices(), binomialCoeffTable);
+    public long add_coboundary_and_get_pivot(long s, int dim, LongOpenHashSet index_lookup, LongColumn working_coboundary){
+        SimplexCoboundaryEnumerator enumerator = new SimplexCoboundaryEnumerator(s, dim, simplexStorageStructure.getNumberOfVertices(), binomialCoeffTable);
         while (enumerator.hasNext()) {
             long index = enumerator.next();
             if (index_lookup.contains(index)) {
@@ -86,21 +101,67 @@ public class HomologyWorker implements Runnable{
 
     /**
      * Performs an implicit matrix reduction of the coboundary matrix.
-     * @param columns_to_reduce - a list of the non-zero columns of the coboundary matrix.
+     * @param columns_to_reduce - the indexes of the simplices giving the non-zero columns of the coboundary matrix.
+     * @param dim - the dimension of the simplices in 'columns_to_reduce'.
      * @param pivot_column_index
      * @param index_lookup - hash set containing the indexes of the non-zero rows in the coboundary matrix.
      * @return
      */
-    public BMatrix reduce_coboundary_matrix(List<Simplex> columns_to_reduce, Long2IntOpenHashMap pivot_column_index, LongOpenHashSet index_lookup){
+    public BMatrix reduce_coboundary_matrix(LongList columns_to_reduce, int dim, Long2IntOpenHashMap pivot_column_index, LongOpenHashSet index_lookup){
+        return reduce_coboundary_matrix(columns_to_reduce, dim, pivot_column_index, index_lookup, null);
+    }
+
+    /**
+     * Performs an implicit matrix reduction of the coboundary matrix, skipping the columns whose simplex index is
+     * in 'cleared'. Such a column is a pivot of the coboundary matrix one dimension below and hence reduces to zero
+     * (clearing). If shortcuts are enabled, a column whose largest coboundary entry is not yet a pivot is paired
+     * directly without building the column (apparent pair).
+     * @param columns_to_reduce - the indexes of the simplices giving the non-zero columns of the coboundary matrix.
+     * @param dim - the dimension of the simplices in 'columns_to_reduce'.
+     * @param pivot_column_index
+     * @param index_lookup - hash set containing the indexes of the non-zero rows in the coboundary matrix.
+     * @param cleared - the indexes of the columns to skip, or null.
+     * @return
+     */
+    public BMatrix reduce_coboundary_matrix(LongList columns_to_reduce, int dim, Long2IntOpenHashMap pivot_column_index, LongOpenHashSet index_lookup, LongOpenHashSet cleared){
             BMatrix reductionMatrix = BMatrix.identity(columns_to_reduce.size());
+            LongColumn working_coboundary = new LongColumn();
             for(int index_column_to_reduce = 0; index_column_to_reduce<columns_to_reduce.size();index_column_to_reduce++) {
-                Column<Long> working_coboundary= new Column<>();
+                long s = columns_to_reduce.getLong(index_column_to_reduce);
+                if (cleared != null && cleared.contains(s)) continue;
+                working_coboundary.clear();
                 int index_column_to_add = index_column_to_reduce;
+                if (shortcuts) {
+                    SimplexCoboundaryEnumerator enumerator = new SimplexCoboundaryEnumerator(s, dim, simplexStorageStructure.getNumberOfVertices(), binomialCoeffTable);
+                    long pivot = -1;
+                    while (enumerator.hasNext()) {
+                        long index = enumerator.next();
+                        if (index_lookup.contains(index)) {
+                            pivot = index;
+                            break;
+                        }
+                    }
+                    if (pivot == -1) continue;
+                    if (!pivot_column_index.containsKey(pivot)) {
+                        pivot_column_index.put(pivot, index_column_to_reduce);
+                        continue;
+                    }
+                    //Not an apparent pair, build the rest of the column and reduce it as usual
+                    working_coboundary.add(pivot);
+                    while (enumerator.hasNext()) {
+                        long index = enumerator.next();
+                        if (index_lookup.contains(index)) {
+                            working_coboundary.add(index);
+                        }
+                    }
+                    index_column_to_add = pivot_column_index.get(pivot);
+                    reductionMatrix.set(index_column_to_reduce, index_column_to_add, !reductionMatrix.get(index_column_to_reduce, index_column_to_add));
+                }
                 while(true) {
-                    Long pivot = add_coboundary_and_get_pivot(columns_to_reduce.get(index_column_to_add), index_lookup, working_coboundary);
-                    if (pivot != null) {
-                        if (pivot_column_index.containsKey((long)pivot)) {
-                            index_column_to_add = pivot_column_index.get((long)pivot);
+                    long pivot = add_coboundary_and_get_pivot(columns_to_reduce.getLong(index_column_to_add), dim, index_lookup, working_coboundary);
+                    if (pivot != -1) {
+                        if (pivot_column_index.containsKey(pivot)) {
+                            index_column_to_add = pivot_column_index.get(pivot);
                             reductionMatrix.set(index_column_to_reduce, index_column_to_add, !reductionMatrix.get(index_column_to_reduce, index_column_to_add));
                         } else {
                             pivot_column_index.addTo(pivot, index_column_to_reduce);
@@ -120,18 +181,24 @@ public class HomologyWorker implements Runnable{
      * @param pivot_column_index
      * @return A list of pivot and column indices.
      */
-        public List<Pair<Long, Integer>> computePivots(List<List<Long>> columns_to_reduce, Long2IntOpenHashMap pivot_column_index){
+        public List<Pair<Long, Integer>> computePivots(List<LongList> columns_to_reduce, Long2IntOpenHashMap pivot_column_index){
             List<Pair<Long, Integer>> pivot_columns = new ArrayList<>();
-            for(Integer index_column_to_reduce = 0; index_column_to_reduce<columns_to_reduce.size();index_column_to_reduce++) {
-                Column<Long> working_column= new Column<>();
+            //The reduced column of each pivot. Adding the unreduced column instead does not cancel the pivot in general.
+            Long2ObjectOpenHashMap<LongList> reduced_columns = new Long2ObjectOpenHashMap<>();
+            LongColumn working_column = new LongColumn();
+            for(int index_column_to_reduce = 0; index_column_to_reduce<columns_to_reduce.size();index_column_to_reduce++) {
+                working_column.clear();
                 working_column.addAll(columns_to_reduce.get(index_column_to_reduce));
-                Long pivot;
-                while((pivot=working_column.get_pivot()) != null) {
-                    if(pivot_column_index.containsKey((long)pivot)){
-                        working_column.addAll(columns_to_reduce.get(pivot_column_index.get(pivot)));
+                long pivot;
+                while((pivot=working_column.get_pivot()) != -1) {
+                    if(reduced_columns.containsKey(pivot)){
+                        working_column.addAll(reduced_columns.get(pivot));
                     }else{
                         pivot_column_index.addTo(pivot, index_column_to_reduce);
                         pivot_columns.add(new Pair<Long, Integer>(pivot, index_column_to_reduce));
+                        LongList column = new LongArrayList();
+                        while((pivot=working_column.pop_pivot()) != -1) column.add(pivot);
+                        reduced_columns.put(column.getLong(0), column);
                         break;
                     }
                 }
@@ -145,21 +212,23 @@ public class HomologyWorker implements Runnable{
      * @param columns_to_reduce
      * @return the matrix inverse.
      */
-    public BMatrix inverse(List<List<Long>> columns_to_reduce){
+    public BMatrix inverse(List<LongList> columns_to_reduce){
         Long2IntOpenHashMap pivot_column_index = new Long2IntOpenHashMap();
         computePivots(columns_to_reduce, pivot_column_index);
         assert pivot_column_index.size() == columns_to_reduce.size();
         BMatrix reductionMatrix = new BMatrix(columns_to_reduce.size(), columns_to_reduce.size());//BMatrix.identity(columns_to_reduce.size());
+        LongColumn working_column = new LongColumn();
         for(int i = 0; i<columns_to_reduce.size();i++) {
-            Integer index_column_to_reduce = pivot_column_index.get((long)i);
-            Column<Long> working_column= new Column<>();
+            int index_column_to_reduce = pivot_column_index.get((long)i);
+            working_column.clear();
             working_column.addAll(columns_to_reduce.get(index_column_to_reduce));
             working_column.add((long)i);
             reductionMatrix.set(index_column_to_reduce, i, true);
-            Long pivot;
-            while((pivot=working_column.get_pivot()) != null) {
-                working_column.addAll(columns_to_reduce.get(pivot_column_index.get((long)pivot)));
-                reductionMatrix.set(pivot_column_index.get((long)pivot), i, !reductionMatrix.get(pivot_column_index.get((long)pivot), i));
+            long pivot;
+            while((pivot=working_column.get_pivot()) != -1) {
+                int index_column_to_add = pivot_column_index.get(pivot);
+                working_column.addAll(columns_to_reduce.get(index_column_to_add));
+                reductionMatrix.set(index_column_to_add, i, !reductionMatrix.get(index_column_to_add, i));
             }
         }
         return reductionMatrix;
@@ -169,58 +238,68 @@ public class HomologyWorker implements Runnable{
      * Computes a basis for the homology in each dimension of the chain complex given by 'chain'.
      * @param chain
      */
-    protected void computeHomologyBasis(final List<List<Simplex>> chain) {
+    protected void computeHomologyBasis(final List<LongList> chain) {
         List<LongOpenHashSet> index_lookups = new ArrayList<>();
         for (int i = 0; i < chain.size(); i++) {
-            List<Simplex> simplices = chain.get(i);
-            LongOpenHashSet index_lookup = new LongOpenHashSet();
-            for (Simplex s : simplices) index_lookup.add(s.getIndex());
-            index_lookups.add(index_lookup);
+            index_lookups.add(new LongOpenHashSet(chain.get(i)));
         }
 
-        List<List<Long>> image_basis = new ArrayList<>();
+        List<LongList> image_basis = new ArrayList<>();
+        LongOpenHashSet cleared = null;
 
         for (int dim = 0; dim < maxDimension; dim++) {
             Long2IntOpenHashMap pivot_column_index = new Long2IntOpenHashMap();
-            BMatrix reduction_matrix = reduce_coboundary_matrix(chain.get(dim), pivot_column_index, index_lookups.get(dim + 1));
+            BMatrix reduction_matrix = reduce_coboundary_matrix(chain.get(dim), dim, pivot_column_index, index_lookups.get(dim + 1), cleared);
+
+            boolean[] is_pivot = new boolean[chain.get(dim).size()];
+            for (int i : pivot_column_index.values()) is_pivot[i] = true;
 
-            List<List<Long>> kernel_basis = new ArrayList<>();
+            List<LongList> kernel_basis = new ArrayList<>();
             for (int i = 0; i < chain.get(dim).size(); i++) {
-                if (!pivot_column_index.containsValue(i)) {
+                if (!is_pivot[i] && (cleared == null || !cleared.contains(chain.get(dim).getLong(i)))) {
                     BVector row = reduction_matrix.getRow(i);
-                    List<Long> column = new ArrayList<>();
+                    LongList column = new LongArrayList(row.getNumberOfNonZeroElements());
                     IntIterator iterator = row.getIndexSetIterator();
                     while (iterator.hasNext()) {
-                        column.add(((Integer) iterator.nextInt()).longValue());
+                        column.add(iterator.nextInt());
                     }
                     kernel_basis.add(column);
                 }
             }
 
-            int image_basis_size = image_basis.size();
-            image_basis.addAll(kernel_basis);
-            List<Pair<Long, Integer>> pivot_column = computePivots(image_basis, new Long2IntOpenHashMap());
+            List<LongList> homology_basis;
+            if (shortcuts) {
+                //The cleared columns span the image, so the remaining kernel vectors span a complement of it.
+                homology_basis = kernel_basis;
+            } else {
+                int image_basis_size = image_basis.size();
+                image_basis.addAll(kernel_basis);
+                List<Pair<Long, Integer>> pivot_column = computePivots(image_basis, new Long2IntOpenHashMap());
 
-            List<List<Long>> homology_basis = new ArrayList<>();
-            for (int i = image_basis_size; i < pivot_column.size(); i++) {
-                homology_basis.add(image_basis.get(pivot_column.get(i)._2()));
-            }
+                homology_basis = new ArrayList<>();
+                for (int i = image_basis_size; i < pivot_column.size(); i++) {
+                    homology_basis.add(image_basis.get(pivot_column.get(i)._2()));
+                }
 
-            assert homology_basis.size() == kernel_basis.size() - image_basis_size;
+                assert homology_basis.size() == kernel_basis.size() - image_basis_size;
+            }
 
             int homology_basis_size = homology_basis.size();
             for (int i = 0; i < chain.get(dim).size(); i++) {
-                List<Long> column = new ArrayList<>();
-                column.add((long) i);
+                LongList column = new LongArrayList(1);
+                column.add(i);
                 homology_basis.add(column);
             }
-            pivot_column = computePivots(homology_basis, new Long2IntOpenHashMap());
+            List<Pair<Long, Integer>> pivot_column = computePivots(homology_basis, new Long2IntOpenHashMap());
             List<BVector> extended_basis = new ArrayList<>();
-            List<List<Long>> e_basis = new ArrayList<>();
+            List<LongList> e_basis = new ArrayList<>();
             for (Pair<Long, Integer> pivot : pivot_column) {
                 BVector row = new BVector(chain.get(dim).size());
-                for (long pos : homology_basis.get(pivot._2()))
-                    row.set((int) pos, !row.get((int) pos));
+                LongList column = homology_basis.get(pivot._2());
+                for (int j = 0; j < column.size(); j++) {
+                    int pos = (int) column.getLong(j);
+                    row.set(pos, !row.get(pos));
+                }
                 extended_basis.add(row);
                 e_basis.add(homology_basis.get(pivot._2()));
             }
@@ -232,20 +311,25 @@ public class HomologyWorker implements Runnable{
             naturalTransformation[dim] = extendedBasis_inv;
             naturalTransformation_inverse[dim] = extendedBasis;
 
+            if (shortcuts) {
+                cleared = new LongOpenHashSet(pivot_column_index.keySet());
+                continue;
+            }
+
             Long2IntOpenHashMap index_column_lookup = new Long2IntOpenHashMap();
             for (int i = 0; i < chain.get(dim + 1).size(); i++)
-                index_column_lookup.addTo(chain.get(dim + 1).get(i).getIndex(), i);
+                index_column_lookup.addTo(chain.get(dim + 1).getLong(i), i);
 
             image_basis = new ArrayList<>();
             int[] pivot_columns = pivot_column_index.values().toIntArray();
             for (int i = 0; i < pivot_columns.length; i++) {
-                List<Long> column = new ArrayList<>();
-                Simplex s = chain.get(dim).get(pivot_columns[i]);
-                SimplexCoboundaryEnumerator enumerator = new SimplexCoboundaryEnumerator(s, simplexStorageStructure.getNumberOfVertices(), binomialCoeffTable);
+                LongList column = new LongArrayList();
+                long s = chain.get(dim).getLong(pivot_columns[i]);
+                SimplexCoboundaryEnumerator enumerator = new SimplexCoboundaryEnumerator(s, dim, simplexStorageStructure.getNumberOfVertices(), binomialCoeffTable);
                 while (enumerator.hasNext()) {
                     long simplex = enumerator.next();
                     if (index_column_lookup.containsKey(simplex)) {
-                        column.add(((long) index_column_lookup.get(simplex)));
+                        column.add(index_column_lookup.get(simplex));
                     }
                 }
                 image_basis.add(column);
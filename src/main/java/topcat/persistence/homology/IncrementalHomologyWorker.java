@@ -0,0 +1,234 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.homology;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import topcat.matrix.BMatrix;
+import topcat.matrix.BVector;
+import topcat.matrix.LongColumn;
+import topcat.persistence.simplex.SimplexStorageStructure;
+import topcat.util.IntTuple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the basis change of the homology along a monotone path v_0 <= v_1 <= ... in the grid. Since the complex
+ * at v_{t+1} contains the complex at v_t, the boundary matrices only grow by new rows and columns when the simplices
+ * are ordered by the position in the path where they first appear. The reduction of the predecessor is therefore
+ * kept as it is and only the new columns are reduced at each step.
+ */
+public class IncrementalHomologyWorker implements Runnable{
+    public static Logger log = LoggerFactory.getLogger(IncrementalHomologyWorker.class);
+    int maxDimension;
+    List<IntTuple> path;
+    int[][] homologyDimension;
+    BMatrix[][] naturalTransformation;
+    BMatrix[][] naturalTransformation_inverse;
+    SimplexStorageStructure simplexStorageStructure;
+
+    //For each dimension: the index of the simplex that was added as the i'th one in the path
+    List<LongList> simplices = new ArrayList<>();
+    //For each dimension: the position in the path order of each simplex index
+    List<Long2IntOpenHashMap> order = new ArrayList<>();
+    //For each dimension: the reduced boundary column of each simplex, empty if the simplex is a cycle
+    List<List<LongList>> reduced_columns = new ArrayList<>();
+    //For each dimension: the columns that were added to obtain the reduced column of each simplex
+    List<List<LongList>> reduction_columns = new ArrayList<>();
+    //For each dimension: the column that owns each pivot
+    List<Int2IntOpenHashMap> pivot_column_index = new ArrayList<>();
+
+    IncrementalHomologyWorker(SimplexStorageStructure simplexStorageStructure, List<IntTuple> path, int maxDimension) {
+        this.maxDimension = maxDimension;
+        this.path = path;
+        this.homologyDimension = new int[path.size()][maxDimension];
+        this.naturalTransformation = new BMatrix[path.size()][maxDimension];
+        this.naturalTransformation_inverse = new BMatrix[path.size()][maxDimension];
+        this.simplexStorageStructure = simplexStorageStructure;
+        for (int k = 0; k <= maxDimension; k++) {
+            simplices.add(new LongArrayList());
+            order.add(new Long2IntOpenHashMap());
+            reduced_columns.add(new ArrayList<>());
+            reduction_columns.add(new ArrayList<>());
+            pivot_column_index.add(new Int2IntOpenHashMap());
+        }
+    }
+
+    /**
+     * Reduces the boundary column of the simplex added as number 'column' in dimension 'dim' against the columns
+     * that were added before it.
+     * @param dim
+     * @param column
+     * @param working_column
+     * @param working_reduction
+     */
+    void reduce_boundary_column(int dim, int column, LongColumn working_column, LongColumn working_reduction){
+        working_column.clear();
+        working_reduction.clear();
+        working_reduction.add(column);
+        LongList boundary = simplexStorageStructure.getBoundary(simplices.get(dim).getLong(column), dim);
+        Long2IntOpenHashMap face_order = order.get(dim-1);
+        for (int j = 0; j < boundary.size(); j++) {
+            working_column.add(face_order.get(boundary.getLong(j)));
+        }
+        Int2IntOpenHashMap pivots = pivot_column_index.get(dim);
+        long pivot;
+        while ((pivot = working_column.get_pivot()) != -1) {
+            if (pivots.containsKey((int) pivot)) {
+                int index_column_to_add = pivots.get((int) pivot);
+                working_column.addAll(reduced_columns.get(dim).get(index_column_to_add));
+                working_reduction.addAll(reduction_columns.get(dim).get(index_column_to_add));
+            } else {
+                pivots.put((int) pivot, column);
+                break;
+            }
+        }
+        reduced_columns.get(dim).add(drain(working_column));
+        reduction_columns.get(dim).add(drain(working_reduction));
+    }
+
+    private static LongList drain(LongColumn column){
+        LongList list = new LongArrayList();
+        long pivot;
+        while ((pivot = column.pop_pivot()) != -1) list.add(pivot);
+        return list;
+    }
+
+    private boolean isCycle(int dim, int column){
+        return dim == 0 || reduced_columns.get(dim).get(column).isEmpty();
+    }
+
+    /**
+     * Computes the basis change in dimension 'dim' at the position with index 't' in the path. The basis consists of
+     * the essential cycles (a basis for the homology), the reduced boundary columns of dimension dim+1 and the
+     * simplices that are not cycles, which together span the chain space. Each basis vector has a distinct largest
+     * simplex in the path order, so the basis is triangular and is inverted by a single pass of eliminations.
+     * @param t
+     * @param dim
+     * @param chain - the simplices of dimension 'dim' at the position, ordered by index.
+     */
+    void computeHomologyBasis(int t, int dim, LongList chain){
+        int n = chain.size();
+        int[] position = new int[n];
+        Long2IntOpenHashMap dim_order = order.get(dim);
+        for (int i = 0; i < n; i++) position[dim_order.get(chain.getLong(i))] = i;
+
+        //The basis vectors in path order, sorted decreasingly, and the basis vector leading at each simplex
+        List<LongList> basis = new ArrayList<>(n);
+        int[] leading = new int[n];
+        Int2IntOpenHashMap boundary_pivots = pivot_column_index.get(dim + 1);
+        for (int c = 0; c < n; c++) {
+            if (isCycle(dim, c) && !boundary_pivots.containsKey(c)) {
+                leading[c] = basis.size();
+                basis.add(dim == 0 ? LongArrayList.wrap(new long[]{c}) : reduction_columns.get(dim).get(c));
+            }
+        }
+        int homology_basis_size = basis.size();
+        for (LongList boundary : reduced_columns.get(dim + 1)) {
+            if (!boundary.isEmpty()) {
+                leading[(int) boundary.getLong(0)] = basis.size();
+                basis.add(boundary);
+            }
+        }
+        for (int c = 0; c < n; c++) {
+            if (!isCycle(dim, c)) {
+                leading[c] = basis.size();
+                basis.add(LongArrayList.wrap(new long[]{c}));
+            }
+        }
+        assert basis.size() == n;
+
+        List<BVector> extended_basis = new ArrayList<>(n);
+        for (LongList column : basis) {
+            BVector row = new BVector(n);
+            for (int j = 0; j < column.size(); j++) row.set(position[(int) column.getLong(j)], true);
+            extended_basis.add(row);
+        }
+
+        BMatrix inverse = new BMatrix(n, n);
+        LongColumn working_column = new LongColumn();
+        for (int c = 0; c < n; c++) {
+            working_column.clear();
+            working_column.add(c);
+            long pivot;
+            while ((pivot = working_column.get_pivot()) != -1) {
+                int m = leading[(int) pivot];
+                working_column.addAll(basis.get(m));
+                inverse.set(m, position[c], !inverse.get(m, position[c]));
+            }
+        }
+
+        homologyDimension[t][dim] = homology_basis_size;
+        naturalTransformation[t][dim] = inverse;
+        naturalTransformation_inverse[t][dim] = (new BMatrix(extended_basis)).transpose();
+    }
+
+    /**
+     * Returns i if 'w' = 'v' + e_i, and -1 otherwise.
+     */
+    private static int direction(IntTuple v, IntTuple w){
+        int axis = -1;
+        for(int i=0;i<v.length();i++){
+            int diff = w.get(i) - v.get(i);
+            if(diff == 0) continue;
+            if(diff != 1 || axis != -1) return -1;
+            axis = i;
+        }
+        return axis;
+    }
+
+    @Override
+    public void run() {
+        log.debug("Starting incremental basis change computation from position: "+path.get(0));
+        LongColumn working_column = new LongColumn();
+        LongColumn working_reduction = new LongColumn();
+        List<LongList> chain = null;
+        for (int t = 0; t < path.size(); t++) {
+            List<LongList> previous = chain;
+            chain = new ArrayList<>();
+            //The path moves one step along a single axis, so the simplices at the previous position are reused
+            int axis = t == 0 ? -1 : direction(path.get(t-1), path.get(t));
+            for (int dim = 0; dim <= maxDimension; dim++) {
+                LongList current = axis == -1 ? simplexStorageStructure.getIndexesLEQThan(dim, path.get(t))
+                        : simplexStorageStructure.getIndexesLEQThan(dim, path.get(t), previous.get(dim), axis);
+                chain.add(current);
+                Long2IntOpenHashMap dim_order = order.get(dim);
+                for (int i = 0; i < current.size(); i++) {
+                    long s = current.getLong(i);
+                    if (dim_order.containsKey(s)) continue;
+                    int column = simplices.get(dim).size();
+                    simplices.get(dim).add(s);
+                    dim_order.put(s, column);
+                    if (dim > 0) reduce_boundary_column(dim, column, working_column, working_reduction);
+                }
+            }
+            for (int dim = 0; dim < maxDimension; dim++) {
+                computeHomologyBasis(t, dim, chain.get(dim));
+            }
+        }
+        log.debug("Finished incremental basis change computation to position: "+path.get(path.size()-1));
+    }
+}
@@ -0,0 +1,405 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.homology;
+
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import topcat.matrix.LongColumn;
+import topcat.persistence.functor.PresentedFunctor;
+import topcat.persistence.simplex.SimplexStorageStructure;
+import topcat.util.GridIterator;
+import topcat.util.IntTuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Computes minimal presentations of the homology modules of a multifiltered complex directly from the boundary
+ * matrices, following Lesnick and Wright [1]. The homology in dimension k is presented by a basis of the (free) module
+ * of k-cycles as generators and the boundaries of the (k+1)-simplices as relations, after which redundant relations
+ * and pairs of a generator and a relation at the same grade are removed. Since the cycle module is only guaranteed to
+ * be free for at most two parameters, the grid must have at most two dimensions.
+ *
+ * [1] - M. Lesnick, M. Wright, Computing Minimal Presentations and Bigraded Betti Numbers of 2-Parameter Persistent
+ * Homology, arXiv:1902.05708.
+ */
+public class MinimalPresentation {
+    private static Logger log = LoggerFactory.getLogger(MinimalPresentation.class);
+
+    private static final Comparator<IntTuple> LEX = (u, v) -> {
+        for(int i=0;i<u.length();i++){
+            int c = Integer.compare(u.get(i), v.get(i));
+            if(c != 0) return c;
+        }
+        return 0;
+    };
+
+    private final SimplexStorageStructure simplexStorageStructure;
+    private final IntTuple size;
+    private final List<LongList> simplices = new ArrayList<>();
+    private final List<List<IntTuple>> grades = new ArrayList<>();
+    private final List<Long2ObjectOpenHashMap<IntTuple>> gradeOf = new ArrayList<>();
+
+    private MinimalPresentation(SimplexStorageStructure simplexStorageStructure, int maxDimension){
+        this.simplexStorageStructure = simplexStorageStructure;
+        this.size = simplexStorageStructure.getGridSize();
+        for(int dim=0;dim<=maxDimension;dim++){
+            LongList dim_simplices = new LongArrayList();
+            List<IntTuple> dim_grades = new ArrayList<>();
+            Long2ObjectOpenHashMap<IntTuple> dim_grade = new Long2ObjectOpenHashMap<>();
+            for(IntTuple v : GridIterator.getSequence(size)){
+                LongList local_simplices = simplexStorageStructure.getIndexesAt(dim, v);
+                for(int i=0;i<local_simplices.size();i++){
+                    dim_simplices.add(local_simplices.getLong(i));
+                    dim_grades.add(v);
+                    dim_grade.put(local_simplices.getLong(i), v);
+                }
+            }
+            simplices.add(dim_simplices);
+            grades.add(dim_grades);
+            gradeOf.add(dim_grade);
+        }
+    }
+
+    /**
+     * Computes a minimal presentation of the homology module in each dimension less than 'maxDimension'.
+     * @param simplexStorageStructure
+     * @param maxDimension
+     * @return
+     */
+    public static List<PresentedFunctor> compute(SimplexStorageStructure simplexStorageStructure, int maxDimension){
+        if(simplexStorageStructure.getGridSize().length() > 2){
+            throw new IllegalArgumentException("Minimal presentations are only supported for at most two parameters.");
+        }
+        MinimalPresentation presentation = new MinimalPresentation(simplexStorageStructure, maxDimension);
+        List<PresentedFunctor> functors = new ArrayList<>();
+        for(int dim=0;dim<maxDimension;dim++){
+            functors.add(presentation.compute(dim));
+        }
+        return functors;
+    }
+
+    private static LongList drain(LongColumn column){
+        LongList list = new LongArrayList();
+        long pivot;
+        while ((pivot = column.pop_pivot()) != -1) list.add(pivot);
+        return list;
+    }
+
+    private static LongList add(LongList a, LongList b, LongColumn working_column){
+        working_column.clear();
+        working_column.addAll(a);
+        working_column.addAll(b);
+        return drain(working_column);
+    }
+
+    private IntTuple gradeOf(int dim, LongList chain){
+        IntTuple grade = gradeOf.get(dim).get(chain.getLong(0));
+        for(int i=1;i<chain.size();i++) grade = IntTuple.join(grade, gradeOf.get(dim).get(chain.getLong(i)));
+        return grade;
+    }
+
+    private PresentedFunctor compute(int dim){
+        log.debug("Starting to compute minimal presentation in dimension "+dim+"...");
+        List<LongList> cycles = new ArrayList<>();
+        List<IntTuple> cycle_grades = new ArrayList<>();
+        computeCycleGenerators(dim, cycles, cycle_grades);
+
+        //A minimal set of generators of the free cycle module is a basis
+        int[] kept = minimize(cycles, cycle_grades);
+        List<LongList> generators = new ArrayList<>();
+        List<IntTuple> generator_grades = new ArrayList<>();
+        for(int i : kept){
+            generators.add(cycles.get(i));
+            generator_grades.add(cycle_grades.get(i));
+        }
+
+        List<LongList> relations = new ArrayList<>();
+        List<IntTuple> relation_grades = new ArrayList<>();
+        computeRelations(dim, generators, generator_grades, relations, relation_grades);
+        kept = minimize(relations, relation_grades);
+        List<LongList> minimal_relations = new ArrayList<>();
+        List<IntTuple> minimal_relation_grades = new ArrayList<>();
+        for(int i : kept){
+            minimal_relations.add(relations.get(i));
+            minimal_relation_grades.add(relation_grades.get(i));
+        }
+        PresentedFunctor F = removeLocalPairs(generator_grades, minimal_relations, minimal_relation_grades);
+        log.debug("Finished computing minimal presentation in dimension "+dim+". ("+F.getGeneratorGrades().size()
+                +" generators and "+F.getRelations().size()+" relations.)");
+        return F;
+    }
+
+    /**
+     * Computes a generating set of the cycles in dimension 'dim'. For two parameters the columns with x-grade at most x
+     * are reduced in colexicographic order for each x. The cycles at grade (x, y) are then spanned by the zero columns
+     * with y-grade at most y, and it suffices to keep those that need the slice x, i.e have x-grade exactly x.
+     */
+    private void computeCycleGenerators(int dim, List<LongList> cycles, List<IntTuple> cycle_grades){
+        LongList columns = simplices.get(dim);
+        if(dim == 0){
+            for(int i=0;i<columns.size();i++){
+                cycles.add(LongArrayList.wrap(new long[]{columns.getLong(i)}));
+                cycle_grades.add(grades.get(dim).get(i));
+            }
+            return;
+        }
+        final List<IntTuple> column_grades = grades.get(dim);
+        boolean bigraded = size.length() == 2;
+        int slices = bigraded ? size.get(0)+1 : 1;
+        final int y = bigraded ? 1 : 0;
+        LongColumn working_column = new LongColumn();
+        LongColumn working_reduction = new LongColumn();
+        for(int x=0;x<slices;x++){
+            List<Integer> slice = new ArrayList<>();
+            for(int i=0;i<columns.size();i++){
+                if(!bigraded || column_grades.get(i).get(0) <= x) slice.add(i);
+            }
+            slice.sort(Comparator.comparingInt((Integer i) -> column_grades.get(i).get(y)).thenComparing(i -> column_grades.get(i), LEX));
+
+            Long2IntOpenHashMap pivot_column_index = new Long2IntOpenHashMap();
+            List<LongList> reduced_columns = new ArrayList<>();
+            List<LongList> reduction_columns = new ArrayList<>();
+            for(int j=0;j<slice.size();j++){
+                long s = columns.getLong(slice.get(j));
+                working_column.clear();
+                working_column.addAll(simplexStorageStructure.getBoundary(s, dim));
+                working_reduction.clear();
+                working_reduction.add(s);
+                long pivot;
+                while((pivot = working_column.get_pivot()) != -1){
+                    if(!pivot_column_index.containsKey(pivot)){
+                        pivot_column_index.put(pivot, j);
+                        break;
+                    }
+                    int index_column_to_add = pivot_column_index.get(pivot);
+                    working_column.addAll(reduced_columns.get(index_column_to_add));
+                    working_reduction.addAll(reduction_columns.get(index_column_to_add));
+                }
+                LongList reduction = drain(working_reduction);
+                if(pivot == -1){
+                    IntTuple grade = gradeOf(dim, reduction);
+                    if(!bigraded || grade.get(0) == x){
+                        cycles.add(reduction);
+                        cycle_grades.add(grade);
+                    }
+                }
+                reduced_columns.add(drain(working_column));
+                reduction_columns.add(reduction);
+            }
+        }
+    }
+
+    /**
+     * Returns the indexes of a minimal subset of 'vectors' generating the same graded module, i.e the vectors that are
+     * not in the span of the vectors at smaller grades, ordered lexicographically by grade. As in
+     * computeCycleGenerators, the vectors of each slice are reduced once in colexicographic order, so the span of the
+     * vectors below the current grade only grows and the pivots are reused across grades. Only the vectors with
+     * x-grade exactly x are decided in slice x.
+     */
+    private static int[] minimize(List<LongList> vectors, final List<IntTuple> vector_grades){
+        boolean[] kept = new boolean[vectors.size()];
+        LongColumn working_column = new LongColumn();
+        for(int x : sliceValues(vector_grades)){
+            Long2ObjectOpenHashMap<LongList> echelon = new Long2ObjectOpenHashMap<>();
+            for(int i : slice(vector_grades, x)){
+                if(insert(vectors.get(i), echelon, working_column) && inSlice(vector_grades.get(i), x)) kept[i] = true;
+            }
+        }
+        LongList indexes = new LongArrayList();
+        for(int i : lexOrder(vector_grades)){
+            if(kept[i]) indexes.add(i);
+        }
+        int[] result = new int[indexes.size()];
+        for(int k=0;k<result.length;k++) result[k] = (int) indexes.getLong(k);
+        return result;
+    }
+
+    /**
+     * Returns the positions of 'grades' in lexicographic order of grade, keeping the order of equal grades.
+     */
+    private static Integer[] lexOrder(final List<IntTuple> grades){
+        Integer[] order = new Integer[grades.size()];
+        for(int i=0;i<order.length;i++) order[i] = i;
+        Arrays.sort(order, (i, j) -> LEX.compare(grades.get(i), grades.get(j)));
+        return order;
+    }
+
+    /**
+     * Returns the distinct x-grades of 'grades' in increasing order, or a single slice for one parameter.
+     */
+    private static int[] sliceValues(List<IntTuple> grades){
+        IntSortedSet values = new IntAVLTreeSet();
+        for(IntTuple grade : grades) values.add(grade.length() == 2 ? grade.get(0) : 0);
+        return values.toIntArray();
+    }
+
+    /**
+     * Returns the positions of the grades with x-grade at most 'x' in colexicographic order of grade, keeping the
+     * order of equal grades. For one parameter all positions are returned.
+     */
+    private static List<Integer> slice(final List<IntTuple> grades, int x){
+        List<Integer> slice = new ArrayList<>();
+        for(int i=0;i<grades.size();i++){
+            if(grades.get(i).length() < 2 || grades.get(i).get(0) <= x) slice.add(i);
+        }
+        slice.sort(Comparator.comparingInt((Integer i) -> last(grades.get(i))).thenComparing(i -> grades.get(i), LEX));
+        return slice;
+    }
+
+    private static boolean inSlice(IntTuple grade, int x){
+        return grade.length() < 2 || grade.get(0) == x;
+    }
+
+    private static int last(IntTuple grade){
+        return grade.get(grade.length()-1);
+    }
+
+    /**
+     * Reduces 'vector' against 'echelon' and inserts the result if it is non-zero.
+     * @return true if the vector was not in the span of the echelon.
+     */
+    private static boolean insert(LongList vector, Long2ObjectOpenHashMap<LongList> echelon, LongColumn working_column){
+        working_column.clear();
+        working_column.addAll(vector);
+        long pivot;
+        while((pivot = working_column.get_pivot()) != -1){
+            LongList column = echelon.get(pivot);
+            if(column == null){
+                LongList reduced = drain(working_column);
+                echelon.put(reduced.getLong(0), reduced);
+                return true;
+            }
+            working_column.addAll(column);
+        }
+        return false;
+    }
+
+    /**
+     * Expresses the boundary of each (dim+1)-simplex in the basis 'generators' of the cycles at its grade.
+     */
+    private void computeRelations(int dim, List<LongList> generators, List<IntTuple> generator_grades,
+                                  List<LongList> relations, List<IntTuple> relation_grades){
+        LongList columns = simplices.get(dim+1);
+        final List<IntTuple> column_grades = grades.get(dim+1);
+
+        //The generators of a slice are inserted in colexicographic order as the sweep passes their y-grade, so the
+        //echelon at a column spans the cycles at its grade and is shared by all columns of the slice
+        LongList[] column_relations = new LongList[columns.size()];
+        LongColumn working_column = new LongColumn();
+        LongColumn working_combination = new LongColumn();
+        for(int x : sliceValues(column_grades)){
+            List<Integer> slice_generators = slice(generator_grades, x);
+            Long2ObjectOpenHashMap<LongList> echelon = new Long2ObjectOpenHashMap<>();
+            Long2ObjectOpenHashMap<LongList> combinations = new Long2ObjectOpenHashMap<>();
+            int g = 0;
+            for(int c : slice(column_grades, x)){
+                IntTuple grade = column_grades.get(c);
+                if(!inSlice(grade, x)) continue;
+                for(;g<slice_generators.size() && last(generator_grades.get(slice_generators.get(g))) <= last(grade);g++){
+                    int k = slice_generators.get(g);
+                    reduce(generators.get(k), LongArrayList.wrap(new long[]{k}), echelon, combinations, working_column, working_combination);
+                    LongList reduced = drain(working_column);
+                    echelon.put(reduced.getLong(0), reduced);
+                    combinations.put(reduced.getLong(0), drain(working_combination));
+                }
+                LongList boundary = simplexStorageStructure.getBoundary(columns.getLong(c), dim+1);
+                reduce(boundary, new LongArrayList(), echelon, combinations, working_column, working_combination);
+                assert working_column.get_pivot() == -1 : "A boundary is not a cycle.";
+                column_relations[c] = drain(working_combination);
+            }
+        }
+        for(int i : lexOrder(column_grades)){
+            relations.add(column_relations[i]);
+            relation_grades.add(column_grades.get(i));
+        }
+    }
+
+    private static void reduce(LongList vector, LongList combination, Long2ObjectOpenHashMap<LongList> echelon,
+                               Long2ObjectOpenHashMap<LongList> combinations, LongColumn working_column,
+                               LongColumn working_combination){
+        working_column.clear();
+        working_column.addAll(vector);
+        working_combination.clear();
+        working_combination.addAll(combination);
+        long pivot;
+        while((pivot = working_column.get_pivot()) != -1 && echelon.containsKey(pivot)){
+            working_column.addAll(echelon.get(pivot));
+            working_combination.addAll(combinations.get(pivot));
+        }
+    }
+
+    /**
+     * Removes each relation that contains a generator of the same grade together with that generator, substituting
+     * the generator in the remaining relations.
+     */
+    private PresentedFunctor removeLocalPairs(List<IntTuple> generator_grades, List<LongList> relations, List<IntTuple> relation_grades){
+        boolean[] removed_generator = new boolean[generator_grades.size()];
+        boolean[] removed_relation = new boolean[relations.size()];
+        LongColumn working_column = new LongColumn();
+        boolean changed = true;
+        while(changed){
+            changed = false;
+            for(int r=0;r<relations.size();r++){
+                if(removed_relation[r]) continue;
+                LongList relation = relations.get(r);
+                long local = -1;
+                for(int j=0;j<relation.size() && local == -1;j++){
+                    if(generator_grades.get((int) relation.getLong(j)).equals(relation_grades.get(r))) local = relation.getLong(j);
+                }
+                if(local == -1) continue;
+                for(int s=0;s<relations.size();s++){
+                    if(s != r && !removed_relation[s] && relations.get(s).contains(local)){
+                        relations.set(s, add(relations.get(s), relation, working_column));
+                    }
+                }
+                removed_relation[r] = true;
+                removed_generator[(int) local] = true;
+                changed = true;
+            }
+        }
+
+        int[] index = new int[generator_grades.size()];
+        List<IntTuple> minimal_generators = new ArrayList<>();
+        for(int g=0;g<generator_grades.size();g++){
+            index[g] = minimal_generators.size();
+            if(!removed_generator[g]) minimal_generators.add(generator_grades.get(g));
+        }
+        List<LongList> minimal_relations = new ArrayList<>();
+        List<IntTuple> minimal_relation_grades = new ArrayList<>();
+        for(int r=0;r<relations.size();r++){
+            if(removed_relation[r]) continue;
+            LongList relation = new LongArrayList(relations.get(r).size());
+            for(int j=0;j<relations.get(r).size();j++) relation.add(index[(int) relations.get(r).getLong(j)]);
+            minimal_relations.add(relation);
+            minimal_relation_grades.add(relation_grades.get(r));
+        }
+        return new PresentedFunctor(size, minimal_generators, minimal_relation_grades, minimal_relations);
+    }
+}
@@ -25,7 +25,9 @@ import topcat.matrix.BMatrix;
 import topcat.matrix.PMatrix;
 import topcat.matrix.distancematrix.DistanceMatrix;
 import topcat.persistence.PersistenceModule;
-import topcat.util.Grid;
+import topcat.persistence.functor.Functor;
+import topcat.util.DoubleGrid;
+import topcat.util.GridCursor;
 import topcat.util.GridIterator;
 import topcat.util.IntTuple;
 
@@ -34,20 +36,26 @@ import java.util.List;
 
 public class PersistenceLandscape {
     IntTuple size;
-    Int2ObjectOpenHashMap<Grid<Double>> lambdas = new Int2ObjectOpenHashMap<>();
+    Int2ObjectOpenHashMap<DoubleGrid> lambdas = new Int2ObjectOpenHashMap<>();
 
     public PersistenceLandscape(IntTuple size) {
         this.size = size;
     }
 
     public void set(int k, IntTuple v, Double value){
-        if(!lambdas.containsKey(k)) lambdas.put(k, Grid.create(size));
-        lambdas.get(k).set(v, value);
+        if(!lambdas.containsKey(k)) lambdas.put(k, new DoubleGrid(size));
+        lambdas.get(k).setDouble(v, value);
+    }
+
+    public void set(int k, int[] v, double value){
+        if(!lambdas.containsKey(k)) lambdas.put(k, new DoubleGrid(size));
+        lambdas.get(k).setDouble(v, value);
     }
 
     public double get(int k, IntTuple v){
-        if(!lambdas.containsKey(k) || lambdas.get(k).get(v) == null) return 0;
-        return lambdas.get(k).get(v);
+        if(!lambdas.containsKey(k)) return 0;
+        Double value = lambdas.get(k).get(v);
+        return value == null ? 0 : value;
     }
 
     public List<List<Double>> vectorize(){
@@ -62,22 +70,27 @@ public class PersistenceLandscape {
     }
 
     public static PersistenceLandscape cartesian(PersistenceModule P, Integer p){
-        PersistenceLandscape landscape = new PersistenceLandscape(P.getFunctor().getSize());
-        for(IntTuple v : GridIterator.getSequence(P.getFunctor().getSize())){
+        Functor F = P.getFunctor();
+        PersistenceLandscape landscape = new PersistenceLandscape(F.getSize());
+        int[] size = F.getSize().toArray();
+        int[] shift = new int[size.length];
+        GridCursor cursor = new GridCursor(F.getSize());
+        while(cursor.next()){
+            int[] v = cursor.position();
             Int2ObjectOpenHashMap<List<Double>> lambdas = new Int2ObjectOpenHashMap<>();
-            List<IntTuple> basis = IntTuple.getStandardBasisSequence(v.length());
-            for (int i=0;i<basis.size();i++) {
-                IntTuple shift = v.plus(basis.get(i));
+            for (int i=0;i<v.length;i++) {
+                System.arraycopy(v, 0, shift, 0, v.length);
+                shift[i]++;
                 int j=0;
-                int k=P.getFunctor().getDimension(v);
+                int k=F.getDimension(v);
                 while(k>0) {
-                    while (BMatrix.rank(P.getFunctor().getMap(v, shift)) >= k && shift.lt(P.getFunctor().getSize())) {
-                        shift = shift.plus(basis.get(i));
+                    while (BMatrix.rank(F.getMap(v, shift)) >= k && lt(shift, size)) {
+                        shift[i]++;
                         j++;
                     }
                     if(!lambdas.containsKey(k)) lambdas.put(k, new ArrayList<>());
                     List<Double> filtrationValues = P.getFiltrationValues().get(i);
-                    lambdas.get(k).add(filtrationValues.get(v.get(i) + j >= filtrationValues.size() ? filtrationValues.size()-1 : v.get(i) + j) - filtrationValues.get(v.get(i)));
+                    lambdas.get(k).add(filtrationValues.get(v[i] + j >= filtrationValues.size() ? filtrationValues.size()-1 : v[i] + j) - filtrationValues.get(v[i]));
                     k--;
                 }
             }
@@ -88,4 +101,11 @@ public class PersistenceLandscape {
         return landscape;
     }
 
+    private static boolean lt(int[] v, int[] w){
+        for(int i=0;i<v.length;i++){
+            if(v[i] >= w[i]) return false;
+        }
+        return true;
+    }
+
 }
@@ -0,0 +1,281 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.persistence.simplex;
+
+import topcat.util.IntTuple;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact binary file format for multifiltered simplicial complexes. A file consists of a header
+ * followed by one block of records per dimension:
+ *
+ *   int magic, int version, int r,
+ *   r times: int count, count doubles (the filtration values of the parameter),
+ *   int n_vertices, int maxDimension, int number of blocks,
+ *   per block: int dimension, long count, count records of (long index, r ints filtration index).
+ *
+ * All values are big-endian. Simplices are identified by their index in the combinatorial number
+ * system, so the file is only valid for simplicial storage structures.
+ */
+public class BinarySimplexFormat {
+
+    static final int MAGIC = 0x54504358; // "TPCX"
+    static final int VERSION = 1;
+
+    /** Size of the memory-mapped windows used when reading. */
+    private static final int WINDOW_SIZE = 1 << 26;
+
+    /**
+     * Writes 'sss' to 'f' in the binary format.
+     * @param sss
+     * @param f
+     * @throws IOException
+     */
+    public static void write(SimplexStorageStructure sss, File f) throws IOException{
+        if(!sss.isSimplicial()){
+            throw new IllegalArgumentException("Only simplicial storage structures can be written in the binary format.");
+        }
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))){
+            List<List<Double>> filtrationValues = sss.getFiltrationValues();
+            int r = filtrationValues.size();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(r);
+            for(List<Double> values : filtrationValues){
+                out.writeInt(values.size());
+                for(double x : values) out.writeDouble(x);
+            }
+            out.writeInt(sss.n_vertices);
+            out.writeInt(sss.max_dimension);
+
+            int[] dims = sss.simplexContainer.keySet().toIntArray();
+            Arrays.sort(dims);
+            out.writeInt(dims.length);
+            for(int dim : dims){
+                SimplexColumns columns = sss.simplexContainer.get(dim);
+                int size = columns.size();
+                out.writeInt(dim);
+                out.writeLong(size);
+                for(int j=0;j<size;j++){
+                    out.writeLong(columns.getIndex(j));
+                    for(int i=0;i<r;i++) out.writeInt(columns.getGrade(j, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a simplex storage structure from the binary file 'f'. The file is memory-mapped and
+     * the records are added directly to the storage structure.
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static SimplexStorageStructure read(File f) throws IOException{
+        try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)){
+            MappedInput in = new MappedInput(channel);
+            if(in.getInt() != MAGIC){
+                throw new IOException("File '"+f+"' is not a binary simplex file.");
+            }
+            int version = in.getInt();
+            if(version != VERSION){
+                throw new IOException("Unsupported binary simplex file version: "+version+".");
+            }
+            int r = in.getInt();
+            List<List<Double>> filtrationValues = new ArrayList<>(r);
+            IntTuple gridSize = IntTuple.zeros(r);
+            for(int i=0;i<r;i++){
+                int count = in.getInt();
+                List<Double> values = new ArrayList<>(count);
+                for(int j=0;j<count;j++) values.add(in.getDouble());
+                filtrationValues.add(values);
+                gridSize.set(i, count-1);
+            }
+            int n_vertices = in.getInt();
+            int maxDimension = in.getInt();
+            SimplexStorageStructure sss = new SimplexStorageStructure(filtrationValues, gridSize, maxDimension, n_vertices);
+
+            int n_blocks = in.getInt();
+            int[] grade = new int[r];
+            for(int b=0;b<n_blocks;b++){
+                int dim = in.getInt();
+                long count = in.getLong();
+                if(count < 0 || count > Integer.MAX_VALUE){
+                    throw new IOException("Malformed binary simplex file. Invalid number of simplices: "+count+".");
+                }
+                sss.ensureCapacity(dim, (int) count);
+                for(long j=0;j<count;j++){
+                    long index = in.getLong();
+                    for(int i=0;i<r;i++) grade[i] = in.getInt();
+                    sss.addElement(index, dim, grade);
+                }
+            }
+            return sss;
+        }
+    }
+
+    /**
+     * Writes 'sss' to 'f' in the text format read by SimplexStorageStructure.readFromFile.
+     * @param sss
+     * @param f
+     * @throws IOException
+     */
+    public static void writeText(SimplexStorageStructure sss, File f) throws IOException{
+        if(!sss.isSimplicial()){
+            throw new IllegalArgumentException("Only simplicial storage structures can be written in the text format.");
+        }
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(f))){
+            List<List<Double>> filtrationValues = sss.getFiltrationValues();
+            int r = filtrationValues.size();
+            writer.write(Integer.toString(r));
+            writer.newLine();
+            for(List<Double> values : filtrationValues){
+                for(int j=0;j<values.size();j++){
+                    if(j > 0) writer.write(' ');
+                    writer.write(Double.toString(values.get(j)));
+                }
+                writer.newLine();
+            }
+            writer.write(Integer.toString(sss.n_vertices));
+            writer.newLine();
+            writer.write(Integer.toString(sss.max_dimension));
+            writer.newLine();
+
+            int[] dims = sss.simplexContainer.keySet().toIntArray();
+            Arrays.sort(dims);
+            StringBuilder sb = new StringBuilder();
+            for(int dim : dims){
+                SimplexColumns columns = sss.simplexContainer.get(dim);
+                for(int j=0;j<columns.size();j++){
+                    int[] vertices = Simplex.get_simplex_vertices(columns.getIndex(j), dim, sss.n_vertices-1, sss.binomialCoeffTable);
+                    sb.setLength(0);
+                    for(int k=0;k<vertices.length;k++){
+                        if(k > 0) sb.append(' ');
+                        sb.append(vertices[k]);
+                    }
+                    sb.append(':');
+                    for(int i=0;i<r;i++) sb.append(' ').append(columns.getGrade(j, i));
+                    writer.write(sb.toString());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the text file 'textFile' to the binary file 'binaryFile'.
+     * @param textFile
+     * @param binaryFile
+     * @throws IOException
+     */
+    public static void convertToBinary(File textFile, File binaryFile) throws IOException{
+        write(SimplexStorageStructure.readFromFile(textFile), binaryFile);
+    }
+
+    /**
+     * Converts the binary file 'binaryFile' to the text file 'textFile'.
+     * @param binaryFile
+     * @param textFile
+     * @throws IOException
+     */
+    public static void convertToText(File binaryFile, File textFile) throws IOException{
+        writeText(read(binaryFile), textFile);
+    }
+
+    /**
+     * Converts between the text and the binary format. Usage: (--to-binary | --to-text) input output
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length != 3){
+            System.err.println("Usage: BinarySimplexFormat (--to-binary | --to-text) <input> <output>");
+            System.exit(1);
+        }
+        if(args[0].equals("--to-binary")){
+            convertToBinary(new File(args[1]), new File(args[2]));
+        }else if(args[0].equals("--to-text")){
+            convertToText(new File(args[1]), new File(args[2]));
+        }else{
+            System.err.println("Unknown option '"+args[0]+"'.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads big-endian values from a file channel through a sequence of memory-mapped windows, so
+     * that files larger than 2GB can be read.
+     */
+    private static class MappedInput {
+        private final FileChannel channel;
+        private final long length;
+        private long windowStart = 0;
+        private ByteBuffer window;
+
+        MappedInput(FileChannel channel) throws IOException{
+            this.channel = channel;
+            this.length = channel.size();
+            map(0);
+        }
+
+        private void map(long position) throws IOException{
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, length-position));
+        }
+
+        private void ensure(int bytes) throws IOException{
+            if(window.remaining() < bytes){
+                long position = windowStart+window.position();
+                if(length-position < bytes){
+                    throw new IOException("Malformed binary simplex file. Unexpected end of file.");
+                }
+                map(position);
+            }
+        }
+
+        int getInt() throws IOException{
+            ensure(Integer.BYTES);
+            return window.getInt();
+        }
+
+        long getLong() throws IOException{
+            ensure(Long.BYTES);
+            return window.getLong();
+        }
+
+        double getDouble() throws IOException{
+            ensure(Double.BYTES);
+            return window.getDouble();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.simplex;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongList;
+import topcat.util.IntTuple;
+
+import java.util.List;
+
+/**
+ * A multifiltered chain complex whose generators are simplices but whose boundaries are given explicitly, such as
+ * the output of {@link ChunkReduction}. The boundary of a generator is a list of indexes of generators one dimension
+ * below.
+ */
+public class ChainComplexStorageStructure extends SimplexStorageStructure {
+    Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<LongList>> boundaries = new Int2ObjectOpenHashMap<>();
+
+    public ChainComplexStorageStructure(List<List<Double>> filtrationValues, IntTuple gridSize, Integer max_dimesion, Integer n_vertices){
+        super(filtrationValues, gridSize, max_dimesion, n_vertices);
+    }
+
+    public void addElement(Simplex simplex, IntTuple filtrationIndex, LongList boundary){
+        addElement(simplex, filtrationIndex);
+        if(!boundaries.containsKey(simplex.getDimension())){
+            boundaries.put(simplex.getDimension(), new Long2ObjectOpenHashMap<>());
+        }
+        boundaries.get(simplex.getDimension()).put(simplex.getIndex(), boundary);
+    }
+
+    @Override
+    public LongList getBoundary(long index, int dimension){
+        return boundaries.get(dimension).get(index);
+    }
+
+    @Override
+    public boolean isSimplicial(){
+        return false;
+    }
+}
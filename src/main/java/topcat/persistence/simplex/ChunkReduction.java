@@ -0,0 +1,204 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.simplex;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import topcat.matrix.LongColumn;
+import topcat.util.GridIterator;
+import topcat.util.IntTuple;
+import topcat.util.Parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chunk reduction of a multifiltered chain complex, as described by Fugacci and Kerber [1]. A pair of generators
+ * (a, b) with a in the boundary of b and both at the same grade can be removed without changing the homology at any
+ * grade. The reduction first pairs generators locally, i.e only using columns of the same grade, and then removes the
+ * paired generators from the boundaries of the remaining (global) generators. Each grade is a chunk that is
+ * processed independently, so both phases run in parallel over the grades.
+ *
+ * [1] - U. Fugacci, M. Kerber, Chunk Reduction for Multi-Parameter Persistent Homology, SoCG 2019.
+ */
+public class ChunkReduction {
+    private static Logger log = LoggerFactory.getLogger(ChunkReduction.class);
+
+    private final SimplexStorageStructure simplexStorageStructure;
+    private final List<IntTuple> grades;
+    private final int maxDimension;
+
+    //For each dimension: the generators ordered by grade and then by index, and the grade and position of each
+    private final long[][] index;
+    private final int[][] chunkStart;
+    private final int[][] chunk;
+    private final Long2IntOpenHashMap[] position;
+
+    //For each dimension: whether a generator is removed, and for a removed row, the column it is paired with
+    private final boolean[][] removed;
+    private final int[][] partner;
+    private final LongList[][] reduced_columns;
+
+    private ChunkReduction(SimplexStorageStructure simplexStorageStructure){
+        this.simplexStorageStructure = simplexStorageStructure;
+        this.grades = GridIterator.getSequence(simplexStorageStructure.getGridSize());
+        this.maxDimension = simplexStorageStructure.getMaxDimension();
+        this.index = new long[maxDimension+1][];
+        this.chunkStart = new int[maxDimension+1][];
+        this.chunk = new int[maxDimension+1][];
+        this.position = new Long2IntOpenHashMap[maxDimension+1];
+        this.removed = new boolean[maxDimension+1][];
+        this.partner = new int[maxDimension+1][];
+        this.reduced_columns = new LongList[maxDimension+1][];
+
+        //The grid sequence is lexicographic, which is a linear extension of the grade order
+        for(int dim=0;dim<=maxDimension;dim++){
+            LongList indexes = new LongArrayList();
+            chunkStart[dim] = new int[grades.size()+1];
+            for(int i=0;i<grades.size();i++){
+                chunkStart[dim][i] = indexes.size();
+                //The simplices at a grade are listed in order of index
+                indexes.addAll(simplexStorageStructure.getIndexesAt(dim, grades.get(i)));
+            }
+            chunkStart[dim][grades.size()] = indexes.size();
+            index[dim] = indexes.toLongArray();
+            chunk[dim] = new int[index[dim].length];
+            position[dim] = new Long2IntOpenHashMap(index[dim].length);
+            for(int i=0;i<grades.size();i++){
+                for(int j=chunkStart[dim][i];j<chunkStart[dim][i+1];j++){
+                    chunk[dim][j] = i;
+                    position[dim].put(index[dim][j], j);
+                }
+            }
+            removed[dim] = new boolean[index[dim].length];
+            partner[dim] = new int[index[dim].length];
+            Arrays.fill(partner[dim], -1);
+            reduced_columns[dim] = new LongList[index[dim].length];
+        }
+    }
+
+    /**
+     * Returns a chain complex with the same homology at each grade as the complex in 'simplexStorageStructure', where
+     * every pair of generators that can be removed locally has been removed.
+     * @param simplexStorageStructure
+     * @return
+     */
+    public static ChainComplexStorageStructure reduce(SimplexStorageStructure simplexStorageStructure){
+        ChunkReduction reduction = new ChunkReduction(simplexStorageStructure);
+        log.debug("Starting chunk reduction...");
+        //Clearing: a generator paired as a row in dimension dim+1 is not reduced as a column in dimension dim
+        for(int dim=reduction.maxDimension;dim>0;dim--){
+            final int d = dim;
+            reduction.forEachChunk(chunk -> reduction.reduceLocally(d, chunk));
+        }
+        ChainComplexStorageStructure reduced = new ChainComplexStorageStructure(simplexStorageStructure.getFiltrationValues(),
+                simplexStorageStructure.getGridSize(), reduction.maxDimension, simplexStorageStructure.getNumberOfVertices());
+        int size = 0;
+        for(int dim=0;dim<=reduction.maxDimension;dim++){
+            final int d = dim;
+            final LongList[] boundaries = new LongList[reduction.index[dim].length];
+            if(dim > 0) reduction.forEachChunk(chunk -> reduction.compress(d, chunk, boundaries));
+            for(int c=0;c<reduction.index[dim].length;c++){
+                if(reduction.removed[dim][c]) continue;
+                Simplex s = new Simplex(reduction.index[dim][c], dim);
+                reduced.addElement(s, reduction.grades.get(reduction.chunk[dim][c]), dim > 0 ? boundaries[c] : new LongArrayList());
+                size++;
+            }
+        }
+        log.debug("Finished chunk reduction. (Kept "+size+" generators.)");
+        return reduced;
+    }
+
+    /**
+     * Runs 'task' for each chunk in parallel.
+     * @param task
+     */
+    private void forEachChunk(final Parallel.Task task){
+        int n_threads = 2*(Runtime.getRuntime().availableProcessors() < 5 ? 5 : Runtime.getRuntime().availableProcessors());
+        Parallel.forEach(grades.size(), n_threads, task);
+    }
+
+    private void addBoundary(int dim, int column, LongColumn working_column){
+        LongList boundary = simplexStorageStructure.getBoundary(new Simplex(index[dim][column], dim));
+        Long2IntOpenHashMap face_position = position[dim-1];
+        for(int j=0;j<boundary.size();j++) working_column.add(face_position.get(boundary.getLong(j)));
+    }
+
+    private static LongList drain(LongColumn column){
+        LongList list = new LongArrayList();
+        long pivot;
+        while ((pivot = column.pop_pivot()) != -1) list.add(pivot);
+        return list;
+    }
+
+    /**
+     * Phase I: reduces the columns of dimension 'dim' in 'chunk' using only the columns of the same grade, and pairs
+     * each column with its pivot if the pivot has the same grade.
+     */
+    private void reduceLocally(int dim, int chunk){
+        LongColumn working_column = new LongColumn();
+        for(int c=chunkStart[dim][chunk];c<chunkStart[dim][chunk+1];c++){
+            if(removed[dim][c]) continue;
+            working_column.clear();
+            addBoundary(dim, c, working_column);
+            long pivot;
+            while((pivot = working_column.get_pivot()) != -1 && this.chunk[dim-1][(int) pivot] == chunk){
+                int column_to_add = partner[dim-1][(int) pivot];
+                if(column_to_add == -1){
+                    partner[dim-1][(int) pivot] = c;
+                    removed[dim-1][(int) pivot] = true;
+                    removed[dim][c] = true;
+                    reduced_columns[dim][c] = drain(working_column);
+                    break;
+                }
+                working_column.addAll(reduced_columns[dim][column_to_add]);
+            }
+        }
+    }
+
+    /**
+     * Phase II: computes the boundary of each remaining column of dimension 'dim' in 'chunk' in terms of the
+     * remaining generators. A row paired with a column is replaced by the rest of that column, and a row that was
+     * itself paired as a column is dropped.
+     */
+    private void compress(int dim, int chunk, LongList[] boundaries){
+        LongColumn working_column = new LongColumn();
+        for(int c=chunkStart[dim][chunk];c<chunkStart[dim][chunk+1];c++){
+            if(removed[dim][c]) continue;
+            working_column.clear();
+            addBoundary(dim, c, working_column);
+            LongList boundary = new LongArrayList();
+            long row;
+            while((row = working_column.pop_pivot()) != -1){
+                if(!removed[dim-1][(int) row]){
+                    boundary.add(index[dim-1][(int) row]);
+                }else if(partner[dim-1][(int) row] != -1){
+                    LongList column = reduced_columns[dim][partner[dim-1][(int) row]];
+                    for(int j=1;j<column.size();j++) working_column.add(column.getLong(j));
+                }
+            }
+            boundaries[c] = boundary;
+        }
+    }
+}
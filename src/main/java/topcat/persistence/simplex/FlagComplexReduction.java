@@ -0,0 +1,267 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.persistence.simplex;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import topcat.matrix.distancematrix.DistanceMatrix;
+import topcat.matrix.distancematrix.CSRDistanceMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Preprocessing of the graph of a multifiltered flag complex before the complex is constructed. Each method takes the
+ * distance matrices passed to SimplicialComplex.computeSimplexStream and returns distance matrices where the first
+ * one is a sparse matrix in compressed sparse row form that only contains the diagonal and the edges that are kept,
+ * so that the result can be passed to computeSimplexStream in their place.
+ */
+public class FlagComplexReduction {
+    private static Logger log = LoggerFactory.getLogger(FlagComplexReduction.class);
+
+    /**
+     * Removes edges that are filtration-dominated [1]. An edge uv of grade g is dominated by a common neighbor w if
+     * uw and vw have grades at most g and, for every other common neighbor x of u and v, the grade of xw is at most
+     * the join of g and the grades of ux and vx. Removing such an edge does not change the homotopy type of the flag
+     * complex at any grade, so the homology of the complex is the same. The edges are visited once, in decreasing
+     * lexicographical order of their grades.
+     *
+     * [1] - Alonso, Kerber, Pritam. Filtration-domination in bifiltered graphs. ALENEX 2023.
+     * @param distanceMatrices
+     * @param filtrationValues
+     * @return
+     */
+    public static List<DistanceMatrix> collapseEdges(List<DistanceMatrix> distanceMatrices, List<List<Double>> filtrationValues){
+        DistanceMatrix distanceMatrix = distanceMatrices.get(0);
+        int n = distanceMatrix.rows, r = filtrationValues.size();
+
+        //Compute the edges that appear in the multifiltration and their grades
+        IntArrayList edge_u = new IntArrayList(), edge_v = new IntArrayList(), edge_grades = new IntArrayList();
+        int[] nonzero_rows = distanceMatrix.getNonZeroRows().clone();
+        Arrays.sort(nonzero_rows);
+        for(int i : nonzero_rows){
+            int[] nonzero_cols = distanceMatrix.getNonZeroRowEntries(i).clone();
+            Arrays.sort(nonzero_cols);
+            for(int j : nonzero_cols){
+                if(j <= i) continue;
+                boolean isLEQ = true;
+                for(int k=0;k<r && isLEQ;k++){
+                    List<Double> values = filtrationValues.get(k);
+                    isLEQ = distanceMatrices.get(k).get(i, j) <= values.get(values.size()-1);
+                }
+                if(!isLEQ) continue;
+                edge_u.add(i);
+                edge_v.add(j);
+                for(int k=0;k<r;k++){
+                    DistanceMatrix metric = distanceMatrices.get(k);
+                    double f = Math.max(metric.get(i, j), Math.max(metric.get(i, i), metric.get(j, j)));
+                    edge_grades.add(SimplicialComplex.filtrationIndex(f, filtrationValues.get(k)));
+                }
+            }
+        }
+        final int n_edges = edge_u.size();
+        final int[] grades = edge_grades.toIntArray();
+
+        //Sorted adjacency lists with the edge of each neighbor
+        int[] degree = new int[n];
+        for(int e=0;e<n_edges;e++){
+            degree[edge_u.getInt(e)]++;
+            degree[edge_v.getInt(e)]++;
+        }
+        int[][] neighbors = new int[n][];
+        int[][] edges = new int[n][];
+        for(int i=0;i<n;i++){
+            neighbors[i] = new int[degree[i]];
+            edges[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        //The edges are sorted by (u, v), so the neighbors are added in increasing order
+        for(int e=0;e<n_edges;e++){
+            int u = edge_u.getInt(e), v = edge_v.getInt(e);
+            neighbors[v][degree[v]] = u;
+            edges[v][degree[v]++] = e;
+        }
+        for(int e=0;e<n_edges;e++){
+            int u = edge_u.getInt(e), v = edge_v.getInt(e);
+            neighbors[u][degree[u]] = v;
+            edges[u][degree[u]++] = e;
+        }
+
+        //Visit the edges in decreasing lexicographical order of their grades
+        int[] order = new int[n_edges];
+        for(int e=0;e<n_edges;e++) order[e] = e;
+        it.unimi.dsi.fastutil.Arrays.quickSort(0, n_edges, (a, b) -> {
+            for(int k=0;k<r;k++){
+                int c = Integer.compare(grades[order[b]*r+k], grades[order[a]*r+k]);
+                if(c != 0) return c;
+            }
+            return Integer.compare(order[a], order[b]);
+        }, (a, b) -> {
+            int t = order[a];
+            order[a] = order[b];
+            order[b] = t;
+        });
+
+        boolean[] removed = new boolean[n_edges];
+        IntArrayList common = new IntArrayList(), common_u = new IntArrayList(), common_v = new IntArrayList();
+        int n_removed = 0;
+        for(int e : order){
+            int u = edge_u.getInt(e), v = edge_v.getInt(e);
+
+            //Common neighbors of u and v together with the edges to them
+            common.clear();
+            common_u.clear();
+            common_v.clear();
+            int[] nu = neighbors[u], nv = neighbors[v];
+            int a = 0, b = 0;
+            while(a < nu.length && b < nv.length){
+                if(nu[a] < nv[b]){
+                    a++;
+                }else if(nu[a] > nv[b]){
+                    b++;
+                }else{
+                    if(!removed[edges[u][a]] && !removed[edges[v][b]]){
+                        common.add(nu[a]);
+                        common_u.add(edges[u][a]);
+                        common_v.add(edges[v][b]);
+                    }
+                    a++;
+                    b++;
+                }
+            }
+
+            for(int c=0;c<common.size() && !removed[e];c++){
+                int w = common.getInt(c);
+                if(!leq(grades, common_u.getInt(c), grades, e, r) || !leq(grades, common_v.getInt(c), grades, e, r)) continue;
+                boolean dominated = true;
+                for(int d=0;d<common.size() && dominated;d++){
+                    if(d == c) continue;
+                    int xw = findEdge(neighbors, edges, removed, common.getInt(d), w);
+                    if(xw == -1){
+                        dominated = false;
+                        break;
+                    }
+                    int ux = common_u.getInt(d), vx = common_v.getInt(d);
+                    for(int k=0;k<r;k++){
+                        if(grades[xw*r+k] > Math.max(grades[e*r+k], Math.max(grades[ux*r+k], grades[vx*r+k]))){
+                            dominated = false;
+                            break;
+                        }
+                    }
+                }
+                if(dominated){
+                    removed[e] = true;
+                    n_removed++;
+                }
+            }
+        }
+        log.debug("Removed "+n_removed+" of "+n_edges+" edges by edge collapse.");
+
+        CSRDistanceMatrix.Builder collapsed = new CSRDistanceMatrix.Builder(n, distanceMatrix.cols);
+        for(int i=0;i<n;i++) collapsed.add(i, i, distanceMatrix.get(i, i));
+        for(int e=0;e<n_edges;e++){
+            if(removed[e]) continue;
+            int u = edge_u.getInt(e), v = edge_v.getInt(e);
+            collapsed.add(u, v, distanceMatrix.get(u, v));
+            collapsed.add(v, u, distanceMatrix.get(v, u));
+        }
+        List<DistanceMatrix> result = new ArrayList<>(distanceMatrices);
+        result.set(0, collapsed.build());
+        return result;
+    }
+
+    private static boolean leq(int[] a, int i, int[] b, int j, int r){
+        for(int k=0;k<r;k++){
+            if(a[i*r+k] > b[j*r+k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the edge between 'x' and 'w', or -1 if there is none.
+     */
+    private static int findEdge(int[][] neighbors, int[][] edges, boolean[] removed, int x, int w){
+        int p = Arrays.binarySearch(neighbors[x], w);
+        if(p < 0 || removed[edges[x][p]]) return -1;
+        return edges[x][p];
+    }
+
+    /**
+     * Replaces the first distance matrix by a sparse approximation of its Vietoris-Rips filtration [1]. The vertices
+     * are ordered by a greedy permutation, and an edge is kept only if it is shorter than a bound given by the
+     * insertion radii of its vertices and 'epsilon'. Long edges that are kept get a warped length. The filtrations of
+     * the other distance matrices are left unchanged. Smaller values of 'epsilon' give a better approximation and more
+     * edges.
+     *
+     * [1] - Cavanna, Jahanseir, Sheehy. A geometric perspective on sparse filtrations. CCCG 2015.
+     * @param distanceMatrices
+     * @param epsilon
+     * @return
+     */
+    public static List<DistanceMatrix> sparseRips(List<DistanceMatrix> distanceMatrices, double epsilon){
+        if(!(epsilon > 0)){
+            throw new IllegalArgumentException("Epsilon has to be positive.");
+        }
+        DistanceMatrix distanceMatrix = distanceMatrices.get(0);
+        int n = distanceMatrix.rows;
+
+        //Insertion radii of a greedy permutation starting at vertex 0
+        double[] lambda = new double[n];
+        double[] distance = new double[n];
+        boolean[] inserted = new boolean[n];
+        if(n > 0){
+            lambda[0] = Double.POSITIVE_INFINITY;
+            inserted[0] = true;
+            for(int j=0;j<n;j++) distance[j] = distanceMatrix.get(0, j);
+        }
+        for(int step=1;step<n;step++){
+            int next = -1;
+            for(int j=0;j<n;j++){
+                if(!inserted[j] && (next == -1 || distance[j] > distance[next])) next = j;
+            }
+            lambda[next] = distance[next];
+            inserted[next] = true;
+            for(int j=0;j<n;j++) distance[j] = Math.min(distance[j], distanceMatrix.get(next, j));
+        }
+
+        double e0 = (1+epsilon)/epsilon, e1 = (1+epsilon)*(1+epsilon)/epsilon;
+        CSRDistanceMatrix.Builder sparse = new CSRDistanceMatrix.Builder(n, distanceMatrix.cols);
+        int n_edges = 0;
+        for(int i=0;i<n;i++){
+            sparse.add(i, i, distanceMatrix.get(i, i));
+            for(int j : distanceMatrix.getNonZeroRowEntries(i)){
+                if(j <= i) continue;
+                double d = distanceMatrix.get(i, j);
+                double min_lambda = Math.min(lambda[i], lambda[j]), max_lambda = Math.max(lambda[i], lambda[j]);
+                //The edge is removed once one of its vertices has been removed or their balls stop growing
+                if(d > Math.min((e0+e1)*min_lambda, e0*(min_lambda+max_lambda))) continue;
+                if(d > 2*min_lambda*e0) d = 2*(d-min_lambda*e0);
+                sparse.addSymmetric(i, j, d);
+                n_edges++;
+            }
+        }
+        log.debug("Kept "+n_edges+" edges in the sparse Rips filtration.");
+        List<DistanceMatrix> result = new ArrayList<>(distanceMatrices);
+        result.set(0, sparse.build());
+        return result;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.persistence.simplex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import topcat.util.IntTuple;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads simplex files in the text format of SimplexStorageStructure.readFromFile using several
+ * threads. The simplices of the file are split into byte ranges that start and end at line breaks,
+ * each range is memory-mapped and tokenized into a partial storage structure by its own thread,
+ * and the partial structures are merged in the end.
+ */
+public class ParallelSimplexReader {
+    private static Logger log = LoggerFactory.getLogger(ParallelSimplexReader.class);
+
+    /** Largest byte range parsed by a single task. */
+    private static final long MAX_RANGE_SIZE = 1L << 28;
+
+    /**
+     * Reads the simplex file 'f' using one thread per available processor.
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static SimplexStorageStructure readFromFile(File f) throws IOException{
+        return readFromFile(f, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the simplex file 'f' using 'n_threads' threads.
+     * @param f
+     * @param n_threads
+     * @return
+     * @throws IOException
+     */
+    public static SimplexStorageStructure readFromFile(File f, int n_threads) throws IOException{
+        Header header = readHeader(f);
+        final SimplexStorageStructure simplexStorageStructure = new SimplexStorageStructure(header.filtrationValues,
+                header.gridSize, header.maxDimension, header.n_vertices);
+
+        try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)){
+            long[] ranges = split(channel, header.length, Math.max(1, n_threads));
+            ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, n_threads));
+            List<Future<SimplexStorageStructure>> futures = new ArrayList<>();
+            for(int i=0;i+1<ranges.length;i++){
+                final long start = ranges[i], end = ranges[i+1];
+                if(start == end) continue;
+                futures.add(exec.submit(() -> parse(channel, start, end, simplexStorageStructure)));
+            }
+            exec.shutdown();
+
+            List<SimplexStorageStructure> partials = new ArrayList<>();
+            try {
+                for (Future<SimplexStorageStructure> future : futures) {
+                    partials.add(future.get());
+                }
+            }catch (InterruptedException ire){
+                log.error("Interrupted while parsing simplex file.", ire);
+                exec.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing '"+f+"'.", ire);
+            }catch (ExecutionException exe){
+                exec.shutdownNow();
+                Throwable cause = exe.getCause();
+                if(cause instanceof IOException) throw (IOException) cause;
+                if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException("Failed to parse '"+f+"'.", cause);
+            }
+
+            for(SimplexStorageStructure partial : partials){
+                for(int dim : partial.simplexContainer.keySet()){
+                    simplexStorageStructure.ensureCapacity(dim, simplexStorageStructure.getNumberOfSimplices(dim) + partial.getNumberOfSimplices(dim));
+                }
+            }
+            for(SimplexStorageStructure partial : partials){
+                simplexStorageStructure.addAll(partial);
+            }
+        }
+        return simplexStorageStructure;
+    }
+
+    private static class Header {
+        List<List<Double>> filtrationValues;
+        IntTuple gridSize;
+        int n_vertices;
+        int maxDimension;
+        //Number of bytes in the header
+        long length;
+    }
+
+    /**
+     * Reads the header of the file, i.e everything before the first simplex.
+     */
+    private static Header readHeader(File f) throws IOException{
+        Header header = new Header();
+        try(InputStream in = new BufferedInputStream(new FileInputStream(f))){
+            long[] length = new long[1];
+            int r = Integer.parseInt(readLine(in, length).trim());
+            header.filtrationValues = new ArrayList<>();
+            header.gridSize = IntTuple.zeros(r);
+            for(int i=0;i<r;i++){
+                List<Double> values = new ArrayList<>();
+                for(String x : readLine(in, length).trim().split("\\s+")){
+                    values.add(Double.parseDouble(x));
+                }
+                header.filtrationValues.add(values);
+                header.gridSize.set(i, values.size()-1);
+            }
+            header.n_vertices = Integer.parseInt(readLine(in, length).trim());
+            header.maxDimension = Integer.parseInt(readLine(in, length).trim());
+            header.length = length[0];
+        }
+        return header;
+    }
+
+    private static String readLine(InputStream in, long[] length) throws IOException{
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while((c = in.read()) != -1){
+            length[0]++;
+            if(c == '\n') return sb.toString();
+            sb.append((char) c);
+        }
+        if(sb.length() == 0) throw new IOException("Malformed Simplex format. Unexpected end of header.");
+        return sb.toString();
+    }
+
+    /**
+     * Splits the bytes from 'start' to the end of the file into ranges that begin at the start of a line.
+     */
+    private static long[] split(FileChannel channel, long start, int n_threads) throws IOException{
+        long size = channel.size();
+        long body = size-start;
+        int n_ranges = (int) Math.max(n_threads, (body+MAX_RANGE_SIZE-1)/MAX_RANGE_SIZE);
+        long[] ranges = new long[n_ranges+1];
+        ranges[0] = start;
+        ranges[n_ranges] = size;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for(int i=1;i<n_ranges;i++){
+            long position = Math.max(ranges[i-1], start+body/n_ranges*i);
+            ranges[i] = nextLine(channel, position, buffer);
+        }
+        return ranges;
+    }
+
+    /**
+     * Returns the first position at or after 'position' that starts a line.
+     */
+    private static long nextLine(FileChannel channel, long position, ByteBuffer buffer) throws IOException{
+        long size = channel.size();
+        if(position == 0 || position >= size) return Math.min(position, size);
+        long p = position-1;
+        while(p < size){
+            buffer.clear();
+            int n = channel.read(buffer, p);
+            if(n <= 0) break;
+            for(int j=0;j<n;j++){
+                if(buffer.get(j) == '\n') return p+j+1;
+            }
+            p += n;
+        }
+        return size;
+    }
+
+    private static boolean isSpace(byte c){
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private static boolean isDigit(byte c){
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parses the simplices in the byte range from 'start' to 'end', which begins and ends at line breaks.
+     */
+    private static SimplexStorageStructure parse(FileChannel channel, long start, long end, SimplexStorageStructure template) throws IOException{
+        SimplexStorageStructure partial = new SimplexStorageStructure(template);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+        int r = template.gridSize.length();
+        int n = buffer.limit();
+        int[] vertices = new int[Math.max(2, template.max_dimension+2)];
+        int[] grade = new int[r];
+        int p = 0;
+        while(p < n){
+            byte c = buffer.get(p);
+            if(c == '\n' || isSpace(c)){
+                p++;
+                continue;
+            }
+            int lineStart = p;
+
+            //Parse vertices
+            int n_vertices = 0;
+            while(true){
+                while(p < n && isSpace(buffer.get(p))) p++;
+                if(p < n && buffer.get(p) == ':'){
+                    p++;
+                    break;
+                }
+                if(p == n || !isDigit(buffer.get(p))){
+                    throw malformed(buffer, lineStart, "expected a vertex or ':'");
+                }
+                long value = 0;
+                while(p < n && isDigit(c = buffer.get(p))){
+                    value = 10*value+(c-'0');
+                    if(value > Integer.MAX_VALUE) throw malformed(buffer, lineStart, "vertex out of range");
+                    p++;
+                }
+                if(n_vertices == vertices.length) vertices = Arrays.copyOf(vertices, 2*n_vertices);
+                vertices[n_vertices++] = (int) value;
+            }
+            if(n_vertices == 0) throw malformed(buffer, lineStart, "simplex has no vertices");
+
+            //Parse filtration index
+            int n_grades = 0;
+            while(true){
+                while(p < n && isSpace(buffer.get(p))) p++;
+                if(p == n || buffer.get(p) == '\n') break;
+                if(!isDigit(buffer.get(p))) throw malformed(buffer, lineStart, "expected a filtration index");
+                if(n_grades == r) throw malformed(buffer, lineStart, "filtration index has more than "+r+" entries");
+                long value = 0;
+                while(p < n && isDigit(c = buffer.get(p))){
+                    value = 10*value+(c-'0');
+                    if(value > Integer.MAX_VALUE) throw malformed(buffer, lineStart, "filtration index out of range");
+                    p++;
+                }
+                grade[n_grades++] = (int) value;
+            }
+            if(n_grades != r) throw malformed(buffer, lineStart, "filtration index has "+n_grades+" entries, expected "+r);
+
+            long index = partial.binomialCoeffTable.computeIndex(vertices, n_vertices);
+            partial.addElement(index, n_vertices-1, grade);
+        }
+        return partial;
+    }
+
+    private static IOException malformed(ByteBuffer buffer, int lineStart, String reason){
+        int p = lineStart;
+        while(p < buffer.limit() && buffer.get(p) != '\n') p++;
+        byte[] line = new byte[p-lineStart];
+        for(int j=0;j<line.length;j++) line[j] = buffer.get(lineStart+j);
+        return new IOException("Malformed Simplex format. Line: '"+new String(line, StandardCharsets.US_ASCII).trim()+"': "+reason+".");
+    }
+}
@@ -54,7 +54,7 @@ public class Simplex implements Comparable<Simplex>{
 
     @Override
     public int hashCode(){
-        return (int)index;
+        return Long.hashCode(index);
     }
 
     @Override
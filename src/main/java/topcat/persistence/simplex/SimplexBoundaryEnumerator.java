@@ -0,0 +1,62 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.simplex;
+
+import topcat.util.BinomialCoeffTable;
+
+
+/**
+ * Enumerates the facets of a simplex of dimension at least one, in decreasing order of index. This is the
+ * boundary counterpart of {@link SimplexCoboundaryEnumerator}, following the enumeration in Ripser [1].
+ *
+ * [1] - http://ripser.org
+ */
+public class SimplexBoundaryEnumerator {
+
+    long idx_below, idx_above;
+    int v, k;
+    BinomialCoeffTable binomial_coeff;
+
+    public SimplexBoundaryEnumerator(Simplex simplex, int n_vertices, BinomialCoeffTable binomial_coeff){
+        this(simplex.getIndex(), simplex.getDimension(), n_vertices, binomial_coeff);
+    }
+
+    public SimplexBoundaryEnumerator(long index, int dimension, int n_vertices, BinomialCoeffTable binomial_coeff){
+        this.idx_above=0;
+        this.idx_below=index;
+        this.binomial_coeff = binomial_coeff;
+        this.k = dimension;
+        this.v = n_vertices-1;
+    }
+
+    public boolean hasNext(){
+        return k>=0;
+    }
+
+    public long next(){
+        v = Simplex.get_next_vertex(v, idx_below, k+1, binomial_coeff);
+        long index = idx_above - binomial_coeff.get(v, k+1) + idx_below;
+        idx_below -= binomial_coeff.get(v, k+1);
+        idx_above += binomial_coeff.get(v, k);
+        --k;
+        return index;
+    }
+}
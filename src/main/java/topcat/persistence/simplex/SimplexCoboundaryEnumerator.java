@@ -36,10 +36,14 @@ public class SimplexCoboundaryEnumerator {
     BinomialCoeffTable binomial_coeff;
 
     public SimplexCoboundaryEnumerator(Simplex simplex, int n_vertices, BinomialCoeffTable binomial_coeff){
+        this(simplex.getIndex(), simplex.getDimension(), n_vertices, binomial_coeff);
+    }
+
+    public SimplexCoboundaryEnumerator(long index, int dimension, int n_vertices, BinomialCoeffTable binomial_coeff){
         this.idx_above=0;
-        this.idx_below=simplex.getIndex();
+        this.idx_below=index;
         this.binomial_coeff = binomial_coeff;
-        this.k = simplex.getDimension()+1;
+        this.k = dimension+1;
         this.v = n_vertices;
     }
 
@@ -0,0 +1,263 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.simplex;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of the simplices of one dimension in a grid. The indexes of the simplices are stored in a long
+ * array and their filtration indexes are packed into an int array with r entries per simplex. Simplices are appended
+ * in any order; before the first query they are sorted by index and grouped by grid cell, so that both the simplices
+ * at a cell and the simplices below a filtration index can be listed in sorted order without any objects per simplex.
+ */
+class SimplexColumns {
+    private final int[] bounds;
+    private final int[] strides;
+    private final int r;
+    private final int n_cells;
+
+    private long[] indexes = new long[16];
+    private int[] grades;
+    private int size = 0;
+
+    //Positions of the simplices in each grid cell, in compressed sparse row format
+    private volatile boolean sorted = true;
+    private int[] cell_start;
+    private int[] cell_members;
+
+    SimplexColumns(int[] bounds){
+        this.bounds = bounds;
+        this.r = bounds.length;
+        this.strides = new int[r];
+        int stride = 1;
+        for(int i=r-1;i>=0;i--){
+            strides[i] = stride;
+            stride *= bounds[i]+1;
+        }
+        this.n_cells = stride;
+        this.grades = new int[16*r];
+        this.cell_start = new int[n_cells+1];
+        this.cell_members = new int[0];
+    }
+
+    void add(long index, int[] grade){
+        for(int i=0;i<r;i++){
+            if(grade[i] < 0 || grade[i] > bounds[i]){
+                throw new IndexOutOfBoundsException("Filtration index "+Arrays.toString(grade)+" is outside of the grid.");
+            }
+        }
+        if(size == indexes.length){
+            indexes = Arrays.copyOf(indexes, 2*size);
+            grades = Arrays.copyOf(grades, 2*size*r);
+        }
+        indexes[size] = index;
+        System.arraycopy(grade, 0, grades, size*r, r);
+        size++;
+        sorted = false;
+    }
+
+    int size(){
+        return size;
+    }
+
+    /**
+     * Appends all simplices of 'other', which must have the same bounds.
+     */
+    void addAll(SimplexColumns other){
+        if(other.size == 0) return;
+        ensureCapacity(size+other.size);
+        System.arraycopy(other.indexes, 0, indexes, size, other.size);
+        System.arraycopy(other.grades, 0, grades, size*r, other.size*r);
+        size += other.size;
+        sorted = false;
+    }
+
+    /**
+     * Makes room for 'n' simplices in total without reallocating.
+     */
+    void ensureCapacity(int n){
+        if(n > indexes.length){
+            indexes = Arrays.copyOf(indexes, n);
+            grades = Arrays.copyOf(grades, n*r);
+        }
+    }
+
+    /**
+     * Returns the index of the j:th simplex in order of index.
+     */
+    long getIndex(int j){
+        sort();
+        return indexes[j];
+    }
+
+    /**
+     * Returns coordinate i of the filtration index of the j:th simplex in order of index.
+     */
+    int getGrade(int j, int i){
+        sort();
+        return grades[j*r+i];
+    }
+
+    private int cell(int j){
+        int cell = 0;
+        for(int i=0;i<r;i++) cell += grades[j*r+i]*strides[i];
+        return cell;
+    }
+
+    /**
+     * Sorts the simplices by index and builds the cell index.
+     */
+    private void sort(){
+        if(sorted) return;
+        synchronized (this){
+            if(sorted) return;
+            it.unimi.dsi.fastutil.Arrays.quickSort(0, size, (a, b) -> Long.compare(indexes[a], indexes[b]), (a, b) -> {
+                long index = indexes[a];
+                indexes[a] = indexes[b];
+                indexes[b] = index;
+                for(int i=0;i<r;i++){
+                    int grade = grades[a*r+i];
+                    grades[a*r+i] = grades[b*r+i];
+                    grades[b*r+i] = grade;
+                }
+            });
+            indexes = Arrays.copyOf(indexes, Math.max(size, 1));
+            grades = Arrays.copyOf(grades, Math.max(size, 1)*r);
+
+            //Counting sort by cell, which keeps each cell sorted by index
+            int[] start = new int[n_cells+1];
+            for(int j=0;j<size;j++) start[cell(j)+1]++;
+            for(int c=0;c<n_cells;c++) start[c+1] += start[c];
+            int[] next = Arrays.copyOf(start, n_cells);
+            int[] members = new int[size];
+            for(int j=0;j<size;j++) members[next[cell(j)]++] = j;
+            cell_start = start;
+            cell_members = members;
+            sorted = true;
+        }
+    }
+
+    /**
+     * Returns the indexes of the simplices with filtration index 'v', sorted.
+     */
+    LongList indexesAt(int[] v){
+        sort();
+        int cell = 0;
+        for(int i=0;i<r;i++) cell += v[i]*strides[i];
+        LongList simplices = new LongArrayList(cell_start[cell+1]-cell_start[cell]);
+        for(int k=cell_start[cell];k<cell_start[cell+1];k++) simplices.add(indexes[cell_members[k]]);
+        return simplices;
+    }
+
+    /**
+     * Returns the indexes of the simplices with filtration index less than or equal to 'v', sorted. The cells u <= v
+     * are visited through the cell index, unless there are more such cells than simplices, in which case all
+     * simplices are scanned. Coordinates of 'v' beyond the grid are clamped to it.
+     */
+    LongList indexesLEQThan(int[] v){
+        sort();
+        int[] top = new int[r];
+        long n_box = 1;
+        for(int i=0;i<r;i++){
+            if(v[i] < 0) return new LongArrayList();
+            top[i] = Math.min(v[i], bounds[i]);
+            n_box *= top[i]+1;
+        }
+        if(n_box > size){
+            LongList simplices = new LongArrayList();
+            next_simplex:
+            for(int j=0;j<size;j++){
+                for(int i=0;i<r;i++){
+                    if(grades[j*r+i] > top[i]) continue next_simplex;
+                }
+                simplices.add(indexes[j]);
+            }
+            return simplices;
+        }
+
+        long[] box = new long[0];
+        int n = 0;
+        int[] u = new int[r];
+        while(true){
+            int cell = 0;
+            for(int l=0;l<r;l++) cell += u[l]*strides[l];
+            int count = cell_start[cell+1]-cell_start[cell];
+            if(count > 0){
+                box = LongArrays.grow(box, n+count);
+                for(int k=cell_start[cell];k<cell_start[cell+1];k++) box[n++] = indexes[cell_members[k]];
+            }
+            //Move to the next cell of the box
+            int l = r-1;
+            while(l >= 0 && u[l] == top[l]){
+                u[l] = 0;
+                l--;
+            }
+            if(l < 0) break;
+            u[l]++;
+        }
+        LongArrays.quickSort(box, 0, n);
+        return LongArrayList.wrap(box, n);
+    }
+
+    /**
+     * Returns the indexes of the simplices with filtration index less than or equal to 'v', sorted, given those that
+     * are less than or equal to 'v' - e_i. Only the cells u <= v with u_i = v_i are visited.
+     */
+    LongList indexesLEQThan(int[] v, LongList previous, int i){
+        sort();
+        long[] slab = new long[0];
+        int n = 0;
+        int[] u = new int[r];
+        u[i] = v[i];
+        while(true){
+            int cell = 0;
+            for(int l=0;l<r;l++) cell += u[l]*strides[l];
+            int count = cell_start[cell+1]-cell_start[cell];
+            if(count > 0){
+                slab = LongArrays.grow(slab, n+count);
+                for(int k=cell_start[cell];k<cell_start[cell+1];k++) slab[n++] = indexes[cell_members[k]];
+            }
+            //Move to the next cell of the slab
+            int l = r-1;
+            while(l >= 0 && (l == i || u[l] == v[l])){
+                if(l != i) u[l] = 0;
+                l--;
+            }
+            if(l < 0) break;
+            u[l]++;
+        }
+        LongArrays.quickSort(slab, 0, n);
+
+        LongList simplices = new LongArrayList(previous.size()+n);
+        int j = 0, k = 0;
+        while(j < previous.size() && k < n){
+            if(previous.getLong(j) < slab[k]) simplices.add(previous.getLong(j++));
+            else simplices.add(slab[k++]);
+        }
+        while(j < previous.size()) simplices.add(previous.getLong(j++));
+        while(k < n) simplices.add(slab[k++]);
+        return simplices;
+    }
+}
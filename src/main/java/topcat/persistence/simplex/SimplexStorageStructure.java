@@ -21,8 +21,11 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package topcat.persistence.simplex;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import topcat.util.BinomialCoeffTable;
-import topcat.util.Grid;
 import topcat.util.GridIterator;
 import topcat.util.IntTuple;
 
@@ -32,65 +35,252 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 /**
- * Represents a grid storage structure based on a hierarchy of hashmaps for
- * storing a multifiltered simplicial complex.
+ * Represents a grid storage structure for storing a multifiltered simplicial complex. The simplices
+ * of each dimension are stored column-wise as primitive arrays of indexes and filtration indexes.
  */
 public class SimplexStorageStructure {
-    Int2ObjectOpenHashMap<Grid<List<Simplex>>> simplexContainer;
+    private static Logger log = LoggerFactory.getLogger(SimplexStorageStructure.class);
+
+    Int2ObjectOpenHashMap<SimplexColumns> simplexContainer;
     List<List<Double>> filtrationValues;
     IntTuple gridSize;
     BinomialCoeffTable binomialCoeffTable;
     Integer n_vertices;
+    int max_dimension;
 
     public SimplexStorageStructure(List<List<Double>> filtrationValues, IntTuple gridSize, Integer max_dimesion, Integer n_vertices){
         simplexContainer = new Int2ObjectOpenHashMap<>();
         this.filtrationValues = filtrationValues;
         this.gridSize = gridSize;
         this.n_vertices = n_vertices;
+        this.max_dimension = max_dimesion;
         this.binomialCoeffTable = new BinomialCoeffTable(n_vertices, max_dimesion);
     }
 
+    /**
+     * Creates an empty storage structure with the same grid, filtration values and vertices as 'template'.
+     * @param template
+     */
+    SimplexStorageStructure(SimplexStorageStructure template){
+        simplexContainer = new Int2ObjectOpenHashMap<>();
+        this.filtrationValues = template.filtrationValues;
+        this.gridSize = template.gridSize;
+        this.n_vertices = template.n_vertices;
+        this.max_dimension = template.max_dimension;
+        this.binomialCoeffTable = template.binomialCoeffTable;
+    }
+
     public List<List<Double>> getFiltrationValues() { return filtrationValues; }
 
     public void addElement(Simplex simplex, IntTuple filtrationIndex){
-        if(!simplexContainer.containsKey(simplex.getDimension())){
-            simplexContainer.put(simplex.getDimension(), Grid.create(gridSize));
+        addElement(simplex.getIndex(), simplex.getDimension(), filtrationIndex.toArray());
+    }
+
+    /**
+     * Adds the simplex of dimension 'dimension' with index 'index' at filtration index 'filtrationIndex'. A simplex
+     * whose filtration index is outside of the grid never appears in the filtration and is dropped.
+     * @param index
+     * @param dimension
+     * @param filtrationIndex
+     */
+    public void addElement(long index, int dimension, int[] filtrationIndex){
+        for(int i=0;i<filtrationIndex.length;i++){
+            if(filtrationIndex[i] < 0 || filtrationIndex[i] > gridSize.get(i)){
+                log.debug("Dropping the simplex "+index+" of dimension "+dimension+" at filtration index "+Arrays.toString(filtrationIndex)+", which is outside of the grid.");
+                return;
+            }
         }
-        List<Simplex> simplices = simplexContainer.get(simplex.getDimension()).get(filtrationIndex);
-        if(simplices == null){
-            simplices = new ArrayList<>();
-            simplexContainer.get(simplex.getDimension()).set(filtrationIndex, simplices);
+        SimplexColumns columns = simplexContainer.get(dimension);
+        if(columns == null){
+            columns = new SimplexColumns(gridSize.toArray());
+            simplexContainer.put(dimension, columns);
         }
-        simplices.add(simplex);
+        columns.add(index, filtrationIndex);
     }
 
-    public List<Simplex> getSimplicesAt(int dim, IntTuple filtrationIndex){
-        if(!simplexContainer.containsKey(dim)){
-            return null;
+    /**
+     * Makes room for 'n' simplices of dimension 'dim' in total.
+     * @param dim
+     * @param n
+     */
+    void ensureCapacity(int dim, int n){
+        SimplexColumns columns = simplexContainer.get(dim);
+        if(columns == null){
+            columns = new SimplexColumns(gridSize.toArray());
+            simplexContainer.put(dim, columns);
         }
-        return simplexContainer.get(dim).get(filtrationIndex);
+        columns.ensureCapacity(n);
     }
 
-    public List<Simplex> getSimplicesLEQThan(int dim, IntTuple filtrationIndex){
-        List<Simplex> simplices = new ArrayList<>();
-        for(IntTuple v : GridIterator.getSequence(filtrationIndex)){
-            List<Simplex> local_simplices = getSimplicesAt(dim, v);
-            if(local_simplices != null) {
-                simplices.addAll(local_simplices);
-            }
+    /**
+     * Adds all simplices of 'other', which must have the same grid, to this storage structure.
+     * @param other
+     */
+    void addAll(SimplexStorageStructure other){
+        for(int dim : other.simplexContainer.keySet()){
+            SimplexColumns columns = other.simplexContainer.get(dim);
+            ensureCapacity(dim, getNumberOfSimplices(dim)+columns.size());
+            simplexContainer.get(dim).addAll(columns);
         }
-        Collections.sort(simplices);
+    }
+
+    /**
+     * Returns the number of simplices of dimension 'dim'.
+     * @param dim
+     * @return
+     */
+    public int getNumberOfSimplices(int dim){
+        SimplexColumns columns = simplexContainer.get(dim);
+        return columns == null ? 0 : columns.size();
+    }
+
+    private static List<Simplex> toSimplices(LongList indexes, int dim){
+        List<Simplex> simplices = new ArrayList<>(indexes.size());
+        for(int i=0;i<indexes.size();i++) simplices.add(new Simplex(indexes.getLong(i), dim));
         return simplices;
     }
 
+    /**
+     * Returns the indexes of the simplices of dimension 'dim' at filtration index 'filtrationIndex', sorted.
+     * @param dim
+     * @param filtrationIndex
+     * @return
+     */
+    public LongList getIndexesAt(int dim, IntTuple filtrationIndex){
+        SimplexColumns columns = simplexContainer.get(dim);
+        if(columns == null || !filtrationIndex.leq(gridSize) || filtrationIndex.hasNegativeElements(filtrationIndex)){
+            return new LongArrayList();
+        }
+        return columns.indexesAt(filtrationIndex.toArray());
+    }
+
+    /**
+     * Returns the simplices of dimension 'dim' at filtration index 'filtrationIndex', or null if there are none.
+     * @param dim
+     * @param filtrationIndex
+     * @return
+     */
+    public List<Simplex> getSimplicesAt(int dim, IntTuple filtrationIndex){
+        LongList indexes = getIndexesAt(dim, filtrationIndex);
+        return indexes.isEmpty() ? null : toSimplices(indexes, dim);
+    }
+
+    /**
+     * Returns the indexes of the simplices of dimension 'dim' with filtration index less than or equal to
+     * 'filtrationIndex', sorted.
+     * @param dim
+     * @param filtrationIndex
+     * @return
+     */
+    public LongList getIndexesLEQThan(int dim, IntTuple filtrationIndex){
+        SimplexColumns columns = simplexContainer.get(dim);
+        if(columns == null){
+            return new LongArrayList();
+        }
+        return columns.indexesLEQThan(filtrationIndex.toArray());
+    }
+
+    /**
+     * Returns the indexes of the simplices of dimension 'dim' with filtration index less than or equal to
+     * 'filtrationIndex', given the indexes 'previous' of those that are less than or equal to 'filtrationIndex' - e_i.
+     * Only the simplices with filtration index equal to 'filtrationIndex' in coordinate i are looked up and merged
+     * into 'previous'.
+     * @param dim
+     * @param filtrationIndex
+     * @param previous - the result of getIndexesLEQThan(dim, filtrationIndex - e_i)
+     * @param i
+     * @return
+     */
+    public LongList getIndexesLEQThan(int dim, IntTuple filtrationIndex, LongList previous, int i){
+        SimplexColumns columns = simplexContainer.get(dim);
+        if(columns == null){
+            return new LongArrayList();
+        }
+        if(filtrationIndex.get(i) == 0 || !filtrationIndex.leq(gridSize) || filtrationIndex.hasNegativeElements(filtrationIndex)){
+            return columns.indexesLEQThan(filtrationIndex.toArray());
+        }
+        return columns.indexesLEQThan(filtrationIndex.toArray(), previous, i);
+    }
+
+    /**
+     * Returns the simplices of dimension 'dim' with filtration index less than or equal to 'filtrationIndex',
+     * sorted by index.
+     * @param dim
+     * @param filtrationIndex
+     * @return
+     */
+    public List<Simplex> getSimplicesLEQThan(int dim, IntTuple filtrationIndex){
+        return toSimplices(getIndexesLEQThan(dim, filtrationIndex), dim);
+    }
+
+    /**
+     * Returns the simplices of dimension 'dim' with filtration index less than or equal to 'filtrationIndex', given
+     * the simplices 'previous' that are less than or equal to 'filtrationIndex' - e_i.
+     * @param dim
+     * @param filtrationIndex
+     * @param previous - the result of getSimplicesLEQThan(dim, filtrationIndex - e_i)
+     * @param i
+     * @return
+     */
+    public List<Simplex> getSimplicesLEQThan(int dim, IntTuple filtrationIndex, List<Simplex> previous, int i){
+        LongList previous_indexes = new LongArrayList(previous.size());
+        for(Simplex simplex : previous) previous_indexes.add(simplex.getIndex());
+        return toSimplices(getIndexesLEQThan(dim, filtrationIndex, previous_indexes, i), dim);
+    }
+
     public int getNumberOfVertices(){
         return n_vertices;
     }
 
+    public IntTuple getGridSize(){
+        return gridSize;
+    }
+
+    /**
+     * Returns the largest dimension of a simplex in the structure, or -1 if it is empty.
+     * @return
+     */
+    public int getMaxDimension(){
+        int max = -1;
+        for(int dim : simplexContainer.keySet()) max = Math.max(max, dim);
+        return max;
+    }
+
+    /**
+     * Returns the indexes of the simplices in the boundary of 'simplex'.
+     * @param simplex
+     * @return
+     */
+    public LongList getBoundary(Simplex simplex){
+        return getBoundary(simplex.getIndex(), simplex.getDimension());
+    }
+
+    /**
+     * Returns the indexes of the simplices in the boundary of the simplex of dimension 'dimension' with index 'index'.
+     * @param index
+     * @param dimension
+     * @return
+     */
+    public LongList getBoundary(long index, int dimension){
+        LongList boundary = new LongArrayList(dimension+1);
+        if(dimension == 0) return boundary;
+        SimplexBoundaryEnumerator enumerator = new SimplexBoundaryEnumerator(index, dimension, n_vertices, binomialCoeffTable);
+        while(enumerator.hasNext()) boundary.add(enumerator.next());
+        return boundary;
+    }
+
+    /**
+     * Returns true if the boundaries are those of the simplicial complex, i.e they are given by the
+     * combinatorial number system and can be enumerated implicitly.
+     * @return
+     */
+    public boolean isSimplicial(){
+        return true;
+    }
+
     /**
      * Returns the simplex storage structure and filtration values.
      * @param f
@@ -141,6 +331,25 @@ public class SimplexStorageStructure {
         return simplexStorageStructure;
     }
 
+    /**
+     * Reads a simplex storage structure from a file in the binary format of BinarySimplexFormat.
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static SimplexStorageStructure readFromBinaryFile(File f) throws IOException{
+        return BinarySimplexFormat.read(f);
+    }
+
+    /**
+     * Writes the simplex storage structure to 'f' in the binary format of BinarySimplexFormat.
+     * @param f
+     * @throws IOException
+     */
+    public void writeToBinaryFile(File f) throws IOException{
+        BinarySimplexFormat.write(this, f);
+    }
+
     @Override
     public String toString(){
         IntTuple size = IntTuple.zeros(filtrationValues.size());
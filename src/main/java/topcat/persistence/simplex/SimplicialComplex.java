@@ -20,9 +20,9 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package topcat.persistence.simplex;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntIterator;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import topcat.persistence.PersistenceModuleCollection;
@@ -31,6 +31,7 @@ import topcat.persistence.contours.StandardContour;
 import topcat.matrix.distancematrix.DistanceMatrix;
 import topcat.util.BinomialCoeffTable;
 import topcat.util.IntTuple;
+import topcat.util.Parallel;
 import topcat.util.Point;
 
 import java.util.*;
@@ -49,27 +50,54 @@ public class SimplicialComplex {
      * @return
      */
     public static List<Simplex> computeVietorisRipsComplex(List<DistanceMatrix> distanceMatrices, List<Double> filtrationValue, int maxDimension, BinomialCoeffTable binom_coeff){
-        DistanceMatrix distanceMatrix = distanceMatrices.get(0);
+        List<LongList> indexes = computeVietorisRipsIndexes(distanceMatrices, filtrationValue, maxDimension, binom_coeff, null, null);
         List<Simplex> simplices = new ArrayList<>();
+        for(int dim=0;dim<indexes.size();dim++){
+            for(int i=0;i<indexes.get(dim).size();i++){
+                simplices.add(new Simplex(indexes.get(dim).getLong(i), dim));
+            }
+        }
+        return simplices;
+    }
 
-        //Add 0-dimensional simplices
-        for(int i=0;i<distanceMatrix.rows;i++){
-            simplices.add(new Simplex(i, 0));
+    /**
+     * Computes the Vietoris-Rips for the filtration value given by 'filtrationValue' as the list of the indexes of the
+     * simplices in each dimension. If 'filtrationValues' is not null, the filtration indexes of the simplices are
+     * computed during the construction and added to 'grades', with r consecutive entries per simplex in each dimension.
+     * @param distanceMatrices
+     * @param filtrationValue
+     * @param maxDimension
+     * @param filtrationValues
+     * @param grades
+     * @return
+     */
+    private static List<LongList> computeVietorisRipsIndexes(List<DistanceMatrix> distanceMatrices, List<Double> filtrationValue, int maxDimension, BinomialCoeffTable binom_coeff,
+                                                             List<List<Double>> filtrationValues, List<IntArrayList> grades){
+        DistanceMatrix distanceMatrix = distanceMatrices.get(0);
+        List<LongList> simplices = new ArrayList<>();
+        for(int dim=0;dim<=Math.max(maxDimension, 1);dim++){
+            simplices.add(new LongArrayList());
+            if(grades != null) grades.add(new IntArrayList());
         }
+        final int r = filtrationValues == null ? 0 : filtrationValues.size();
 
-        //Initialize neighbor sets
-        Int2ObjectOpenHashMap<IntOpenHashSet> baseVertices = new Int2ObjectOpenHashMap<>();
+        //Add 0-dimensional simplices
         for(int i=0;i<distanceMatrix.rows;i++){
-            baseVertices.put(i, new IntOpenHashSet());
+            simplices.get(0).add(i);
+            for(int k=0;k<r;k++){
+                grades.get(0).add(filtrationIndex(distanceMatrices.get(k).get(i, i), filtrationValues.get(k)));
+            }
         }
 
-        //Compute all edges that will appear in the multifiltration and add them as 1-simplices
+        //Compute all edges that will appear in the multifiltration and add them as 1-simplices. The upper neighbors of
+        //each vertex are stored as a sorted array.
+        final int[][] upperNeighbors = new int[distanceMatrix.rows][];
         int[] nonzeros_rows = distanceMatrix.getNonZeroRows();
-
-        for(int r=0; r < nonzeros_rows.length; r++) {
-            int i = nonzeros_rows[r];
-            IntOpenHashSet upperNeighbors = new IntOpenHashSet();
-            List<Simplex> local_simplices = new ArrayList<>();
+        IntArrayList neighbors = new IntArrayList();
+        int max_degree = 0;
+        for(int row=0; row < nonzeros_rows.length; row++) {
+            int i = nonzeros_rows[row];
+            neighbors.clear();
             int[] nonzero_cols = distanceMatrix.getNonZeroRowEntries(i);
             for (int j : nonzero_cols) {
                 if (j <= i) {
@@ -84,73 +112,178 @@ public class SimplicialComplex {
                     }
                 }
                 if (isLEQ) {
-                    upperNeighbors.add(j);
-                    local_simplices.add(new Simplex(binom_coeff.computeIndex(i, j), 1));
+                    neighbors.add(j);
+                }
+            }
+            int[] sorted = neighbors.toIntArray();
+            Arrays.sort(sorted);
+            upperNeighbors[i] = sorted;
+            max_degree = Math.max(max_degree, sorted.length);
+            for(int j : sorted){
+                simplices.get(1).add(binom_coeff.get(i, 1) + binom_coeff.get(j, 2));
+                for(int k=0;k<r;k++){
+                    DistanceMatrix metric = distanceMatrices.get(k);
+                    double f = Math.max(metric.get(i, j), Math.max(metric.get(i, i), metric.get(j, j)));
+                    grades.get(1).add(filtrationIndex(f, filtrationValues.get(k)));
                 }
             }
-            baseVertices.put(i, upperNeighbors);
-            simplices.addAll(local_simplices);
         }
-
-
-        //Add cofaces to each vertex inductively.
-        int[] keys = baseVertices.keySet().toIntArray();
-        for(int k = 0; k < keys.length; k++){
-            List<Simplex> local_simplices = new ArrayList<>();
-            int[] vertices = new int[maxDimension + 1];
-            vertices[0] = keys[k];
-            addCofaces(local_simplices, baseVertices.get(keys[k]), vertices, 0, baseVertices, binom_coeff);
-            simplices.addAll(local_simplices);
+        for(int i=0;i<upperNeighbors.length;i++){
+            if(upperNeighbors[i] == null) upperNeighbors[i] = new int[0];
         }
+        if(maxDimension < 2) return simplices;
 
+        //Add cofaces to each vertex inductively. The vertices are split into consecutive blocks that are expanded in
+        //parallel into separate lists, which are concatenated in order.
+        final int n = upperNeighbors.length, degree = max_degree;
+        final int n_blocks = Math.min(n, 8*Runtime.getRuntime().availableProcessors());
+        final List<CofaceExpansion> expansions = new ArrayList<>(n_blocks);
+        for(int b=0;b<n_blocks;b++){
+            expansions.add(new CofaceExpansion(upperNeighbors, degree, maxDimension, binom_coeff, distanceMatrices, filtrationValues));
+        }
+        Parallel.forEach(n_blocks, b -> {
+            CofaceExpansion expansion = expansions.get(b);
+            for(int v = blockStart(n, n_blocks, b); v < blockStart(n, n_blocks, b+1); v++){
+                expansion.expand(v);
+            }
+        });
+        for(int dim=2;dim<simplices.size();dim++){
+            for(CofaceExpansion expansion : expansions){
+                simplices.get(dim).addAll(expansion.simplices.get(dim));
+                if(grades != null) grades.get(dim).addAll(expansion.grades.get(dim));
+            }
+        }
 
         return simplices;
     }
 
     /**
-     * Inductively adds the cofaces to a simplex.
-     * @param simplices
-     * @param candidates
-     * @param vertices
-     * @param index
-     * @param local_baseVertices
+     * Enumerates the cofaces of dimension at least 2 of the vertices of a graph given by its sorted upper neighbors.
+     * The candidates of level 'index' are the common upper neighbors of the vertices of the current simplex in
+     * increasing order, so the vertices of each simplex are added in increasing order and its index can be computed
+     * incrementally. The largest edge value of the simplex in each metric is computed from the value of its parent and
+     * the edges of the new vertex. The buffers are reused for all simplices, so an instance is used by one thread.
      */
-    private static void addCofaces(List<Simplex> simplices, IntOpenHashSet candidates, int[] vertices, int index, Int2ObjectOpenHashMap<IntOpenHashSet> local_baseVertices, BinomialCoeffTable binomial_coeff){
-        if(index >= 2 && index < vertices.length){
-            List<Integer> t_vertices = new ArrayList<>(index+1);
-            for(int i=0;i<index+1;i++){
-                t_vertices.add(vertices[i]);
+    private static class CofaceExpansion {
+        private final int[][] upperNeighbors;
+        private final int maxDimension;
+        private final BinomialCoeffTable binomial_coeff;
+        private final DistanceMatrix[] metrics;
+        private final List<List<Double>> filtrationValues;
+
+        private final int[][] candidates;
+        private final int[] n_candidates;
+        private final int[] vertices;
+        //The largest edge value in each metric of the simplex at each level
+        private final double[][] f_max;
+
+        final List<LongList> simplices = new ArrayList<>();
+        final List<IntArrayList> grades = new ArrayList<>();
+
+        CofaceExpansion(int[][] upperNeighbors, int degree, int maxDimension, BinomialCoeffTable binomial_coeff,
+                        List<DistanceMatrix> distanceMatrices, List<List<Double>> filtrationValues){
+            this.upperNeighbors = upperNeighbors;
+            this.maxDimension = maxDimension;
+            this.binomial_coeff = binomial_coeff;
+            this.filtrationValues = filtrationValues;
+            int r = filtrationValues == null ? 0 : filtrationValues.size();
+            this.metrics = new DistanceMatrix[r];
+            for(int k=0;k<r;k++) metrics[k] = distanceMatrices.get(k);
+            this.candidates = new int[maxDimension][];
+            for(int level=1;level<maxDimension;level++) candidates[level] = new int[degree];
+            this.n_candidates = new int[maxDimension];
+            this.vertices = new int[maxDimension+1];
+            this.f_max = new double[maxDimension+1][r];
+            for(int dim=0;dim<=maxDimension;dim++){
+                simplices.add(new LongArrayList());
+                grades.add(new IntArrayList());
             }
-            simplices.add(new Simplex(binomial_coeff.computeIndex(t_vertices), t_vertices.size()-1));
-        }
-        if(index < vertices.length-1) {
-            IntIterator iterator = candidates.iterator();
-            while(iterator.hasNext()) {
-                vertices[index + 1] = iterator.nextInt();
-                IntOpenHashSet lower_candidates = intersect(candidates, local_baseVertices.get(vertices[index+1]));
-                addCofaces(simplices, lower_candidates, vertices, index + 1, local_baseVertices, binomial_coeff);
+        }
+
+        void expand(int v){
+            candidates[0] = upperNeighbors[v];
+            n_candidates[0] = upperNeighbors[v].length;
+            vertices[0] = v;
+            for(int k=0;k<metrics.length;k++) f_max[0][k] = metrics[k].get(v, v);
+            addCofaces(0, binomial_coeff.get(v, 1));
+        }
+
+        private void addCofaces(int index, long simplex_index){
+            if(index >= 2){
+                simplices.get(index).add(simplex_index);
+                for(int k=0;k<metrics.length;k++){
+                    grades.get(index).add(filtrationIndex(f_max[index][k], filtrationValues.get(k)));
+                }
+            }
+            if(index < maxDimension) {
+                int[] current = candidates[index];
+                int n = n_candidates[index];
+                for(int c=0;c<n;c++) {
+                    int v = current[c];
+                    if(index+1 < maxDimension){
+                        n_candidates[index+1] = intersect(current, c+1, n, upperNeighbors[v], candidates[index+1]);
+                    }
+                    vertices[index+1] = v;
+                    for(int k=0;k<metrics.length;k++){
+                        DistanceMatrix metric = metrics[k];
+                        double f = Math.max(f_max[index][k], metric.get(v, v));
+                        for(int i=0;i<=index;i++) f = Math.max(f, metric.get(vertices[i], v));
+                        f_max[index+1][k] = f;
+                    }
+                    addCofaces(index + 1, simplex_index + binomial_coeff.get(v, index+2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the intersection of the sorted arrays a[from..to) and b and stores it in 'out'.
+     * @param a
+     * @param from
+     * @param to
+     * @param b
+     * @param out
+     * @return the size of the intersection
+     */
+    private static int intersect(int[] a, int from, int to, int[] b, int[] out){
+        int i = from, j = 0, k = 0;
+        while(i < to && j < b.length){
+            if(a[i] < b[j]){
+                i++;
+            }else if(a[i] > b[j]){
+                j++;
+            }else{
+                out[k++] = a[i];
+                i++;
+                j++;
             }
         }
+        return k;
     }
 
     /**
-     * Computes the intersection of two TIntHashSets.
-     * @param h1
-     * @param h2
+     * Returns the index of the smallest filtration value that is greater than or equal to 'f', or the number of
+     * filtration values if there is none.
+     * @param f
+     * @param filtrationValues - sorted in increasing order
      * @return
      */
-    private static IntOpenHashSet intersect(IntOpenHashSet h1, IntOpenHashSet h2){
-        IntOpenHashSet intersection = new IntOpenHashSet();
-        IntIterator iterator = h2.iterator();
-        while(iterator.hasNext()){
-            int n = iterator.nextInt();
-            if(h1.contains(n)){
-                intersection.add(n);
+    static int filtrationIndex(double f, List<Double> filtrationValues){
+        int low = 0, high = filtrationValues.size();
+        while(low < high){
+            int mid = (low+high) >>> 1;
+            if(f > filtrationValues.get(mid)){
+                low = mid+1;
+            }else{
+                high = mid;
             }
         }
-        return intersection;
+        return low;
     }
 
+    private static int blockStart(int n, int n_blocks, int block){
+        return (int) ((long) n*block/n_blocks);
+    }
 
     /**
      * Computes a multifiltered simplicial complex.
@@ -171,20 +304,23 @@ public class SimplicialComplex {
         }
         SimplexStorageStructure storageStructure = new SimplexStorageStructure(filtrationValues, gridSize, maxDimension, distanceMatrices.get(0).cols);
         log.debug("Starting to compute simplicial complex...");
-        //Compute the Vietoris-Rips complex for the maximal filtration value
-        List<Simplex> simplices = computeVietorisRipsComplex(distanceMatrices, maxFiltrationValues, maxDimension, storageStructure.binomialCoeffTable);
-        log.debug("Finished computing simplicial complex. (Computed "+simplices.size()+" number of simplices.)");
-        log.debug("Starting to compute filtrationValues for each simplex...");
-        //Compute the filtration indices for each simplex.
-        for(int i=0;i<simplices.size();i++){
-            List<Integer> filtrationIndexes = calcFiltrationIndexes(simplices.get(i), distanceMatrices, filtrationValues, storageStructure.binomialCoeffTable);
-            if (filtrationIndexes != null) {
-                storageStructure.addElement(simplices.get(i), new IntTuple(filtrationIndexes));
-            }else{
-                log.error("Failed to add simplex "+simplices.get(i)+" to simplex storage structure");
+        //Compute the Vietoris-Rips complex for the maximal filtration value together with the filtration indices
+        List<IntArrayList> grades = new ArrayList<>();
+        List<LongList> simplices = computeVietorisRipsIndexes(distanceMatrices, maxFiltrationValues, maxDimension, storageStructure.binomialCoeffTable, filtrationValues, grades);
+        int n_simplices = 0;
+        for(LongList dim_simplices : simplices) n_simplices += dim_simplices.size();
+        log.debug("Finished computing simplicial complex. (Computed "+n_simplices+" number of simplices.)");
+        int r = filtrationValues.size();
+        int[] filtrationIndexes = new int[r];
+        for(int dim=0;dim<simplices.size();dim++){
+            LongList dim_simplices = simplices.get(dim);
+            int[] dim_grades = grades.get(dim).elements();
+            if(dim_simplices.size() > 0) storageStructure.ensureCapacity(dim, dim_simplices.size());
+            for(int i=0;i<dim_simplices.size();i++){
+                System.arraycopy(dim_grades, i*r, filtrationIndexes, 0, r);
+                storageStructure.addElement(dim_simplices.getLong(i), dim, filtrationIndexes);
             }
         }
-        log.debug("Finished computing filtrationValues.");
         return storageStructure;
     }
 
@@ -196,10 +332,27 @@ public class SimplicialComplex {
      * @return
      */
     public static List<Integer> calcFiltrationIndexes(Simplex simplex, List<DistanceMatrix> distanceMatrices, List<List<Double>> filtrationValues, BinomialCoeffTable binomial_coeff){
+        int[] filtrationIndexes = new int[filtrationValues.size()];
+        calcFiltrationIndexes(simplex.getIndex(), simplex.getDimension(), distanceMatrices, filtrationValues, binomial_coeff, filtrationIndexes);
+        List<Integer> filtrationIndices = new ArrayList<>();
+        for(int filtrationIndex : filtrationIndexes) filtrationIndices.add(filtrationIndex);
+        return filtrationIndices;
+    }
+
+    /**
+     * Calculates the filtrationValues of the simplex of dimension 'dimension' with index 'index' and stores them in
+     * 'filtrationIndices'.
+     * @param index
+     * @param dimension
+     * @param distanceMatrices
+     * @param filtrationValues
+     * @param filtrationIndices
+     */
+    public static void calcFiltrationIndexes(long index, int dimension, List<DistanceMatrix> distanceMatrices, List<List<Double>> filtrationValues,
+                                             BinomialCoeffTable binomial_coeff, int[] filtrationIndices){
         //Find maximum value of the weights on the edges for each metric
-        int[] vertices = Simplex.get_simplex_vertices(simplex.getIndex(), simplex.getDimension(), distanceMatrices.get(0).cols-1, binomial_coeff);
+        int[] vertices = Simplex.get_simplex_vertices(index, dimension, distanceMatrices.get(0).cols-1, binomial_coeff);
 
-        List<Integer> filtrationIndices = new ArrayList<>();
         for(int k=0 ; k < filtrationValues.size(); k++){
             DistanceMatrix distanceMatrix = distanceMatrices.get(k);
             double f_max = Double.NEGATIVE_INFINITY;
@@ -211,14 +364,8 @@ public class SimplicialComplex {
                     }
                 }
             }
-            List<Double> filtrationvalues_k = filtrationValues.get(k);
-            int filtrationIndex = 0, i=0;
-            while(i<filtrationvalues_k.size() && f_max > filtrationvalues_k.get(i)){
-                filtrationIndex = ++i;
-            }
-            filtrationIndices.add(filtrationIndex);
+            filtrationIndices[k] = filtrationIndex(f_max, filtrationValues.get(k));
         }
-        return filtrationIndices;
     }
 
     public static void main(String[] args){
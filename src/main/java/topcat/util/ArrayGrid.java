@@ -0,0 +1,89 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+/**
+ * A grid stored in a flat array in row-major order. The position v is stored at index
+ * sum_i v_i*stride_i, where the strides are computed once from the size of the grid.
+ */
+public abstract class ArrayGrid<T> extends Grid<T> {
+
+    private final int[] bounds;
+    private final int[] strides;
+    protected final int length;
+
+    protected ArrayGrid(IntTuple size){
+        super(size);
+        bounds = size.toArray();
+        strides = new int[size.length()];
+        int stride = 1;
+        for(int i=size.length()-1;i>=0;i--){
+            strides[i] = stride;
+            try {
+                stride = Math.multiplyExact(stride, size.get(i) + 1);
+            }catch (ArithmeticException ae){
+                throw new IllegalArgumentException("Grid of size "+size+" is too large to be stored densely.", ae);
+            }
+        }
+        length = stride;
+    }
+
+    /**
+     * Returns the index of position 'v' in the array, or -1 if 'v' is outside the grid.
+     * @param v
+     * @return
+     */
+    protected int index(IntTuple v){
+        int index = 0;
+        for(int i=0;i<strides.length;i++){
+            int x = v.get(i);
+            if(x < 0 || x > bounds[i]) return -1;
+            index += x*strides[i];
+        }
+        return index;
+    }
+
+    protected int index(int[] v){
+        int index = 0;
+        for(int i=0;i<strides.length;i++){
+            int x = v[i];
+            if(x < 0 || x > bounds[i]) return -1;
+            index += x*strides[i];
+        }
+        return index;
+    }
+
+    protected int checkedIndex(IntTuple v){
+        int index = index(v);
+        if(index == -1){
+            throw new IndexOutOfBoundsException("Position "+v+" is outside of the grid of size "+size()+".");
+        }
+        return index;
+    }
+
+    protected int checkedIndex(int[] v){
+        int index = index(v);
+        if(index == -1){
+            throw new IndexOutOfBoundsException("Position "+new IntTuple(v)+" is outside of the grid of size "+size()+".");
+        }
+        return index;
+    }
+}
@@ -73,6 +73,22 @@ public class BinomialCoeffTable {
         return index;
     }
 
+    /**
+     * Computes the index of the simplex spanned by the first 'n' entries of 'vertices', which are
+     * sorted in place.
+     * @param vertices
+     * @param n
+     * @return
+     */
+    public long computeIndex(int[] vertices, int n){
+        Arrays.sort(vertices, 0, n);
+        long index = 0;
+        for (int i = 0; i < n; i++) {
+            index += get(vertices[i], i+1);
+        }
+        return index;
+    }
+
     public long computeIndex(Integer... v){
         return computeIndex(Arrays.asList(v));
     }
@@ -0,0 +1,58 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+/**
+ * A dense grid backed by an array of objects.
+ */
+public class DenseGrid<T> extends ArrayGrid<T> {
+
+    private final Object[] elements;
+
+    public DenseGrid(IntTuple size){
+        super(size);
+        elements = new Object[length];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(IntTuple v){
+        int index = index(v);
+        return index == -1 ? null : (T) elements[index];
+    }
+
+    @Override
+    public void set(IntTuple v, T t){
+        elements[checkedIndex(v)] = t;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int[] v){
+        int index = index(v);
+        return index == -1 ? null : (T) elements[index];
+    }
+
+    @Override
+    public void set(int[] v, T t){
+        elements[checkedIndex(v)] = t;
+    }
+}
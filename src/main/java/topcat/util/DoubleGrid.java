@@ -0,0 +1,72 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+/**
+ * A dense grid of doubles backed by a double array. Positions that have not been set hold 0.0.
+ */
+public class DoubleGrid extends ArrayGrid<Double> {
+
+    private final double[] elements;
+
+    public DoubleGrid(IntTuple size){
+        super(size);
+        elements = new double[length];
+    }
+
+    public double getDouble(IntTuple v){
+        return elements[checkedIndex(v)];
+    }
+
+    public void setDouble(IntTuple v, double value){
+        elements[checkedIndex(v)] = value;
+    }
+
+    public double getDouble(int[] v){
+        return elements[checkedIndex(v)];
+    }
+
+    public void setDouble(int[] v, double value){
+        elements[checkedIndex(v)] = value;
+    }
+
+    @Override
+    public Double get(IntTuple v){
+        int index = index(v);
+        return index == -1 ? null : elements[index];
+    }
+
+    @Override
+    public void set(IntTuple v, Double value){
+        elements[checkedIndex(v)] = value;
+    }
+
+    @Override
+    public Double get(int[] v){
+        int index = index(v);
+        return index == -1 ? null : elements[index];
+    }
+
+    @Override
+    public void set(int[] v, Double value){
+        elements[checkedIndex(v)] = value;
+    }
+}
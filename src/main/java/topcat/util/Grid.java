@@ -18,37 +18,63 @@ You should have received a copy of the GNU General Public License
 along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 
-package topcat.util;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+package topcat.util;
 
 /**
- * Represents an n-dimensional grid for some n>0. It is implemented using
- * a hierarchy of hashmaps.
+ * Represents an n-dimensional grid for some n>0, i.e the positions v with 0 <= v <= size.
  */
-public class Grid<T> {
+public abstract class Grid<T> {
 
     private IntTuple size;
-    private SubGrid grid = new SubGrid(0);
 
-    public Grid(IntTuple size){
+    protected Grid(IntTuple size){
         this.size = size;
     }
 
-    public static Grid create(IntTuple size){
+    /**
+     * Creates a dense grid of size 'size'.
+     * @param size
+     * @return
+     */
+    public static <T> Grid<T> create(IntTuple size){
+        return new DenseGrid<>(size);
+    }
+
+    /**
+     * Creates a grid of size 'size' that only stores the positions that are set, which is preferable
+     * for very sparse grids.
+     * @param size
+     * @return
+     */
+    public static <T> Grid<T> createSparse(IntTuple size){
         if(size.length() > 1){
-            return new Grid<>(size);
+            return new SparseGrid<>(size);
         }else{
             return new Grid1D<>(size);
         }
     }
 
-    public T get(IntTuple v){
-        return grid.get(v);
+    /**
+     * Returns the element at position 'v', or null if there is none.
+     * @param v
+     * @return
+     */
+    public abstract T get(IntTuple v);
+
+    public abstract void set(IntTuple v, T t);
+
+    /**
+     * Returns the element at position 'v', or null if there is none.
+     * @param v
+     * @return
+     */
+    public T get(int[] v){
+        return get(new IntTuple(v));
     }
 
-    public void set(IntTuple v, T t){
-        grid.set(v, t);
+    public void set(int[] v, T t){
+        set(new IntTuple(v), t);
     }
 
     public IntTuple size(){
@@ -64,60 +90,4 @@ public class Grid<T> {
         }
         return sb.toString();
     }
-
-    class SubGrid{
-        protected int level;
-        private Int2ObjectOpenHashMap<SubGrid> subgrid = new Int2ObjectOpenHashMap<>();
-
-        SubGrid(int level){
-            this.level = level;
-        }
-
-        T get(IntTuple v){
-            if(v.length()-level > 2){
-                if(!subgrid.containsKey(v.get(level))){
-                    return null;
-                }
-                return subgrid.get(v.get(level)).get(v);
-            }
-            if(!subgrid.containsKey(v.get(level))){
-                return null;
-            }
-            return ((BaseGrid)subgrid.get(v.get(level))).get(v.get(level+1));
-        }
-
-        void set(IntTuple v, T t){
-            if(v.length()-level > 2) {
-                if (!subgrid.containsKey(v.get(level))){
-                    subgrid.put(v.get(level), new SubGrid(level+1));
-                }
-                subgrid.get(v.get(level)).set(v, t);
-            }else{
-                if (!subgrid.containsKey(v.get(level))){
-                    subgrid.put(v.get(level), new BaseGrid(level+1));
-                }
-                BaseGrid baseGrid = (BaseGrid) subgrid.get(v.get(level));
-                baseGrid.set(v.get(level+1), t);
-            }
-        }
-    }
-
-    class BaseGrid extends SubGrid{
-        private Int2ObjectOpenHashMap<T> elements = new Int2ObjectOpenHashMap<>();
-
-        BaseGrid(int level) {
-            super(level);
-        }
-
-        T get(int i){
-            if(!elements.containsKey(i)){
-                return null;
-            }
-            return elements.get(i);
-        }
-
-        void set(int i, T t){
-            elements.put(i, t);
-        }
-    }
 }
@@ -23,7 +23,7 @@ package topcat.util;
 /**
  * Represents a 1-dimensional grid, i.e a list.
  */
-public class Grid1D<T> extends Grid<T> {
+public class Grid1D<T> extends SparseGrid<T> {
     private BaseGrid baseGrid = new BaseGrid(0);
 
     Grid1D(IntTuple size) {
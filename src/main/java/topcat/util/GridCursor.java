@@ -0,0 +1,84 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+/**
+ * A mutable position in an n-dimensional grid that iterates over the grid in the same order as
+ * GridIterator without allocating a new tuple for each position, i.e
+ *
+ *     GridCursor v = new GridCursor(size);
+ *     while(v.next()){ ... v.position() ... }
+ */
+public class GridCursor {
+    private final int[] bounds;
+    private final int[] position;
+    private boolean started = false;
+
+    public GridCursor(IntTuple size){
+        this.bounds = size.toArray();
+        this.position = new int[bounds.length];
+    }
+
+    /**
+     * Moves the cursor to the next position in the grid.
+     * @return false if there are no positions left.
+     */
+    public boolean next(){
+        if(!started){
+            started = true;
+            return position.length > 0;
+        }
+        int k = position.length-1;
+        while(k > 0 && position[k] == bounds[k]){
+            position[k--] = 0;
+        }
+        position[k]++;
+        return position[0] <= bounds[0];
+    }
+
+    /**
+     * Moves the cursor back to before the first position of the grid.
+     */
+    public void reset(){
+        for(int i=0;i<position.length;i++) position[i] = 0;
+        started = false;
+    }
+
+    /**
+     * Returns the current position. The array is owned by the cursor and changes when it moves.
+     * @return
+     */
+    public int[] position(){
+        return position;
+    }
+
+    public int get(int i){
+        return position[i];
+    }
+
+    public int length(){
+        return position.length;
+    }
+
+    public IntTuple toIntTuple(){
+        return new IntTuple(position);
+    }
+}
@@ -28,21 +28,17 @@ import java.util.List;
  * An iterator over a n-dimensional grid.
  */
 public class GridIterator implements Iterator<IntTuple> {
-    private IntTuple bounds;
-    private IntTuple current;
+    private final int[] bounds;
+    private final int[] current;
 
     public GridIterator(IntTuple bounds){
-        this.bounds = bounds;
-        List<Integer> zeros = new ArrayList<>();
-        for(int i=0;i<bounds.length();i++){
-            zeros.add(0);
-        }
-        this.current = new IntTuple(zeros);
+        this.bounds = bounds.toArray();
+        this.current = new int[this.bounds.length];
     }
 
     @Override
     public boolean hasNext() {
-        return current.get(0).compareTo(bounds.get(0)) <= 0;
+        return current[0] <= bounds[0];
     }
 
     @Override
@@ -59,12 +55,11 @@ public class GridIterator implements Iterator<IntTuple> {
     }
 
     private void increment(){
-        List<Integer> elements = current.getElements();
-        int k=elements.size()-1;
-        while(elements.get(k).equals(bounds.get(k)) && k>0){
-            elements.set(k--, 0);
+        int k=current.length-1;
+        while(current[k] == bounds[k] && k>0){
+            current[k--] = 0;
         }
-        elements.set(k, elements.get(k)+1);
+        current[k]++;
     }
 
     /**
@@ -88,12 +83,12 @@ public class GridIterator implements Iterator<IntTuple> {
      */
     public static List<IntTuple> getSequence(IntTuple from, IntTuple to){
         List<IntTuple> sequence = new ArrayList<>();
-        IntTuple current = new IntTuple(from);
-        sequence.add(current);
-        for(int i=0;i<current.length();i++){
-            for(int j=0;j<to.get(i)-current.get(i);j++){
-                IntTuple w = IntTuple.getStandardBasisElement(current.length(), i);
-                current = current.plus(w);
+        int[] current = from.toArray();
+        sequence.add(new IntTuple(current));
+        for(int i=0;i<current.length;i++){
+            int target = to.get(i);
+            while(current[i] < target){
+                current[i]++;
                 sequence.add(new IntTuple(current));
             }
         }
@@ -108,11 +103,9 @@ public class GridIterator implements Iterator<IntTuple> {
      */
     public static List<Integer> getIntegerSequence(IntTuple from, IntTuple to){
         List<Integer> sequence = new ArrayList<>();
-        IntTuple current = new IntTuple(from);
-        for(int i=0;i<current.length();i++){
-            for(int j=0;j<to.get(i)-current.get(i);j++){
-                IntTuple w = IntTuple.getStandardBasisElement(current.length(), i);
-                current = current.plus(w);
+        for(int i=0;i<from.length();i++){
+            int diff = to.get(i)-from.get(i);
+            for(int j=0;j<diff;j++){
                 sequence.add(i);
             }
         }
@@ -127,13 +120,12 @@ public class GridIterator implements Iterator<IntTuple> {
      */
     public static List<Pair<IntTuple, Integer>> getPairSequence(IntTuple from, IntTuple to){
         List<Pair<IntTuple, Integer>> sequence = new ArrayList<>();
-        IntTuple current = new IntTuple(from);
-        for(int i=0;i<current.length();i++){
-            int diff = to.get(i)-current.get(i);
-            for (int j = 0; j < diff; j++) {
-                IntTuple w = IntTuple.getStandardBasisElement(current.length(), i);
-                sequence.add(new Pair<>(current, i));
-                current = current.plus(w);
+        int[] current = from.toArray();
+        for(int i=0;i<current.length;i++){
+            int target = to.get(i);
+            while(current[i] < target){
+                sequence.add(new Pair<>(new IntTuple(current), i));
+                current[i]++;
             }
         }
 
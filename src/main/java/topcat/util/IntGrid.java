@@ -0,0 +1,72 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+/**
+ * A dense grid of integers backed by an int array. Positions that have not been set hold 0.
+ */
+public class IntGrid extends ArrayGrid<Integer> {
+
+    private final int[] elements;
+
+    public IntGrid(IntTuple size){
+        super(size);
+        elements = new int[length];
+    }
+
+    public int getInt(IntTuple v){
+        return elements[checkedIndex(v)];
+    }
+
+    public void setInt(IntTuple v, int value){
+        elements[checkedIndex(v)] = value;
+    }
+
+    public int getInt(int[] v){
+        return elements[checkedIndex(v)];
+    }
+
+    public void setInt(int[] v, int value){
+        elements[checkedIndex(v)] = value;
+    }
+
+    @Override
+    public Integer get(IntTuple v){
+        int index = index(v);
+        return index == -1 ? null : elements[index];
+    }
+
+    @Override
+    public void set(IntTuple v, Integer value){
+        elements[checkedIndex(v)] = value;
+    }
+
+    @Override
+    public Integer get(int[] v){
+        int index = index(v);
+        return index == -1 ? null : elements[index];
+    }
+
+    @Override
+    public void set(int[] v, Integer value){
+        elements[checkedIndex(v)] = value;
+    }
+}
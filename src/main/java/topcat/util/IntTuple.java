@@ -41,6 +41,13 @@ public class IntTuple extends Tuple<Integer>{
         super(Arrays.asList(val));
     }
 
+    public IntTuple(int[] vals){
+        super(new ArrayList<Integer>(vals.length));
+        for(int i=0;i<vals.length;i++){
+            this.tuple.add(vals[i]);
+        }
+    }
+
     /**
      * Take double array as input and return the closest IntTuple.
      * @param vals
@@ -52,6 +59,18 @@ public class IntTuple extends Tuple<Integer>{
         }
     }
 
+    /**
+     * Returns the elements of the tuple as a primitive array.
+     * @return
+     */
+    public int[] toArray(){
+        int[] v = new int[length()];
+        for(int i=0;i<v.length;i++){
+            v[i] = get(i);
+        }
+        return v;
+    }
+
     /**
      * Computes the element-wise addition of this tuple with 'v'.
      * @param v
@@ -0,0 +1,171 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * A k-d tree over the points of a point cloud, used to find the points within a given distance of a point. The
+ * points are split at the median of the coordinate with the largest spread, and each node stores the bounding box of
+ * its points, which is used to prune the search.
+ */
+public class KDTree {
+    private static final int LEAF_SIZE = 16;
+
+    private final PointCloud points;
+    private final int d;
+
+    //The points in the order of the tree, so that each node holds a range of them
+    private final int[] order;
+
+    //Nodes, stored in arrays
+    private int n_nodes = 0;
+    private int[] start, end, left, right;
+    private double[] box_min, box_max;
+
+    public KDTree(PointCloud points){
+        this.points = points;
+        this.d = points.dimension();
+        int n = points.size();
+        this.order = new int[n];
+        for(int i=0;i<n;i++) order[i] = i;
+        int capacity = 2*(n/LEAF_SIZE)+1;
+        start = new int[capacity];
+        end = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        box_min = new double[capacity*d];
+        box_max = new double[capacity*d];
+        if(n > 0) build(0, n);
+    }
+
+    private int build(int lo, int hi){
+        int node = n_nodes++;
+        if(node == start.length) grow();
+        start[node] = lo;
+        end[node] = hi;
+        left[node] = right[node] = -1;
+
+        //Bounding box and the coordinate with the largest spread
+        int split_dim = 0;
+        double spread = -1;
+        for(int k=0;k<d;k++){
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for(int i=lo;i<hi;i++){
+                double x = points.get(order[i], k);
+                if(x < min) min = x;
+                if(x > max) max = x;
+            }
+            box_min[node*d+k] = min;
+            box_max[node*d+k] = max;
+            if(max-min > spread){
+                spread = max-min;
+                split_dim = k;
+            }
+        }
+        if(hi-lo <= LEAF_SIZE || spread <= 0) return node;
+
+        int mid = (lo+hi) >>> 1;
+        select(lo, hi-1, mid, split_dim);
+        int l = build(lo, mid);
+        int r = build(mid, hi);
+        left[node] = l;
+        right[node] = r;
+        return node;
+    }
+
+    private void grow(){
+        int capacity = 2*start.length;
+        start = Arrays.copyOf(start, capacity);
+        end = Arrays.copyOf(end, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        box_min = Arrays.copyOf(box_min, capacity*d);
+        box_max = Arrays.copyOf(box_max, capacity*d);
+    }
+
+    /**
+     * Rearranges order[lo..hi] so that the point at position 'k' has the k:th smallest coordinate 'dim' among them,
+     * with smaller or equal coordinates before it and larger or equal after it.
+     */
+    private void select(int lo, int hi, int k, int dim){
+        while(hi > lo){
+            double pivot = points.get(order[(lo+hi) >>> 1], dim);
+            int i = lo, j = hi;
+            while(i <= j){
+                while(points.get(order[i], dim) < pivot) i++;
+                while(points.get(order[j], dim) > pivot) j--;
+                if(i <= j){
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }else if(k >= i){
+                lo = i;
+            }else{
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the points whose distance to point 'i' is at most 'radius' to 'out', excluding 'i' itself.
+     * @param i
+     * @param radius
+     * @param out
+     */
+    public void radiusSearch(int i, double radius, IntArrayList out){
+        //The boxes are pruned with a slightly larger radius, so that the points are compared using the distance itself
+        if(n_nodes > 0) search(0, i, radius, radius*radius*(1+1e-9), out);
+    }
+
+    private void search(int node, int i, double radius, double radius2, IntArrayList out){
+        //Squared distance from the point to the bounding box of the node
+        double dist2 = 0;
+        for(int k=0;k<d;k++){
+            double x = points.get(i, k);
+            double diff = x < box_min[node*d+k] ? box_min[node*d+k]-x : (x > box_max[node*d+k] ? x-box_max[node*d+k] : 0);
+            dist2 += diff*diff;
+            if(dist2 > radius2) return;
+        }
+        if(left[node] == -1){
+            for(int p=start[node];p<end[node];p++){
+                int j = order[p];
+                if(j == i) continue;
+                double s = 0;
+                for(int k=0;k<d;k++){
+                    double diff = points.get(i, k)-points.get(j, k);
+                    s += diff*diff;
+                }
+                if(Math.sqrt(s) <= radius) out.add(j);
+            }
+            return;
+        }
+        search(left[node], i, radius, radius2, out);
+        search(right[node], i, radius, radius2, out);
+    }
+}
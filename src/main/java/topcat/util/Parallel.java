@@ -0,0 +1,87 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs indexed tasks on a fixed thread pool and waits for all of them to finish. If a task fails its exception is
+ * rethrown in the calling thread and the remaining tasks are cancelled. If the calling thread is interrupted while
+ * waiting the tasks are cancelled, the interrupt flag is restored and an exception is thrown, so that a caller never
+ * continues on partially computed results.
+ */
+public class Parallel {
+
+    public interface Task{
+        void run(int i);
+    }
+
+    /**
+     * Runs 'task' for each of 0, ..., n-1 using one thread per available processor.
+     * @param n
+     * @param task
+     */
+    public static void forEach(int n, final Task task){
+        forEach(n, Runtime.getRuntime().availableProcessors(), task);
+    }
+
+    /**
+     * Runs 'task' for each of 0, ..., n-1 using at most 'n_threads' threads. The tasks are run in the calling
+     * thread if there is at most one task or one thread.
+     * @param n
+     * @param n_threads
+     * @param task
+     * @throws IllegalStateException if the calling thread is interrupted or a task throws a checked exception.
+     */
+    public static void forEach(int n, int n_threads, final Task task){
+        if(n <= 1 || n_threads <= 1){
+            for(int i=0;i<n;i++) task.run(i);
+            return;
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(Math.min(n, n_threads));
+        try {
+            List<Future> futures = new ArrayList<>();
+            for(int i=0;i<n;i++){
+                final int index = i;
+                futures.add(exec.submit(() -> task.run(index)));
+            }
+            exec.shutdown();
+            for (Future future : futures) {
+                future.get();
+            }
+        }catch (InterruptedException ire){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel tasks.", ire);
+        }catch (ExecutionException exe){
+            Throwable cause = exe.getCause();
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }finally {
+            exec.shutdownNow();
+        }
+    }
+}
@@ -109,8 +109,18 @@ public class Point{
      * @return
      */
     public static List<Point> getRandomSpherePoints(int n, int d) {
+        return getRandomSpherePoints(n, d, new Random());
+    }
+
+    /**
+     * Returns 'n' number of points sampled from a 'd'-dimensional sphere using the random number generator 'r'.
+     * @param n
+     * @param d
+     * @param r
+     * @return
+     */
+    public static List<Point> getRandomSpherePoints(int n, int d, Random r) {
         List<Point> points = new ArrayList<>();
-        Random r = new Random();
         for (int i = 0; i < n; i++) {
             List<Double> x = new ArrayList<>();
             double norm = 0;
@@ -0,0 +1,206 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import topcat.matrix.distancematrix.ArrayDistanceMatrix;
+import topcat.matrix.distancematrix.DistanceMatrix;
+import topcat.matrix.distancematrix.CSRDistanceMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of points in R^d with the coordinates packed row-major in a double array.
+ */
+public class PointCloud {
+
+    /** Number of points in each block of the distance kernel. */
+    private static final int BLOCK_SIZE = 256;
+
+    private final double[] coordinates;
+    private final int n;
+    private final int d;
+
+    /**
+     * Creates a point cloud of the points in R^d whose coordinates are stored consecutively in 'coordinates'.
+     * @param coordinates
+     * @param d
+     */
+    public PointCloud(double[] coordinates, int d){
+        if(d <= 0 || coordinates.length % d != 0){
+            throw new IllegalArgumentException("The number of coordinates is not a multiple of the dimension "+d+".");
+        }
+        this.coordinates = coordinates;
+        this.d = d;
+        this.n = coordinates.length/d;
+    }
+
+    public static PointCloud fromLists(List<List<Double>> points){
+        int d = points.isEmpty() ? 1 : points.get(0).size();
+        double[] coordinates = new double[points.size()*d];
+        for(int i=0;i<points.size();i++){
+            List<Double> x = points.get(i);
+            if(x.size() != d){
+                throw new IllegalArgumentException("Point "+i+" has dimension "+x.size()+", expected "+d+".");
+            }
+            for(int k=0;k<d;k++) coordinates[i*d+k] = x.get(k);
+        }
+        return new PointCloud(coordinates, d);
+    }
+
+    public static PointCloud fromPoints(List<Point> points){
+        List<List<Double>> lists = new ArrayList<>(points.size());
+        for(Point p : points) lists.add(p.getX());
+        return fromLists(lists);
+    }
+
+    public int size(){
+        return n;
+    }
+
+    public int dimension(){
+        return d;
+    }
+
+    /**
+     * Returns coordinate 'k' of point 'i'.
+     * @param i
+     * @param k
+     * @return
+     */
+    public double get(int i, int k){
+        return coordinates[i*d+k];
+    }
+
+    /**
+     * Computes the Euclidean distance matrix of the points.
+     * @return
+     */
+    public DistanceMatrix computeEuclideanDistanceMatrix(){
+        DistanceMatrix distanceMatrix = new ArrayDistanceMatrix(n, n);
+        computeEuclideanDistances(distanceMatrix);
+        return distanceMatrix;
+    }
+
+    /**
+     * Computes a sparse Euclidean distance matrix in compressed sparse row form that only contains the diagonal and
+     * the pairs of points within distance 'radius' of each other. The pairs are found with a k-d tree, searching from
+     * the points in parallel.
+     * @param radius
+     * @return
+     */
+    public DistanceMatrix computeEuclideanDistanceMatrix(final double radius){
+        final KDTree tree = new KDTree(this);
+        final int n_blocks = Math.max(1, (n+BLOCK_SIZE-1)/BLOCK_SIZE);
+        //The neighbors j > i of the points of each block, with their distances
+        final IntArrayList[] neighbors = new IntArrayList[n_blocks];
+        final int[] degree = new int[n];
+        Parallel.forEach(n_blocks, b -> {
+            IntArrayList found = new IntArrayList();
+            IntArrayList block_neighbors = new IntArrayList();
+            for(int i=b*BLOCK_SIZE;i<Math.min(n, (b+1)*BLOCK_SIZE);i++){
+                found.clear();
+                tree.radiusSearch(i, radius, found);
+                for(int p=0;p<found.size();p++){
+                    int j = found.getInt(p);
+                    if(j > i){
+                        block_neighbors.add(j);
+                        degree[i]++;
+                    }
+                }
+            }
+            neighbors[b] = block_neighbors;
+        });
+
+        CSRDistanceMatrix.Builder builder = new CSRDistanceMatrix.Builder(n, n);
+        for(int b=0;b<n_blocks;b++){
+            int p = 0;
+            for(int i=b*BLOCK_SIZE;i<Math.min(n, (b+1)*BLOCK_SIZE);i++){
+                builder.add(i, i, 0);
+                for(int q=0;q<degree[i];q++){
+                    int j = neighbors[b].getInt(p++);
+                    builder.addSymmetric(i, j, distance(i, j));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the Euclidean distance between the points 'i' and 'j'.
+     * @param i
+     * @param j
+     * @return
+     */
+    public double distance(int i, int j){
+        int offset_i = i*d, offset_j = j*d;
+        double s = 0;
+        for(int k=0;k<d;k++){
+            double diff = coordinates[offset_i+k]-coordinates[offset_j+k];
+            s += diff*diff;
+        }
+        return Math.sqrt(s);
+    }
+
+    /**
+     * Writes the Euclidean distances between all pairs of points into 'distanceMatrix'. The pairs are split into
+     * blocks of points that are computed in parallel if the matrix supports concurrent writes, and one block at a time
+     * otherwise. Every entry is written, so matrices with a fixed sparsity pattern are rejected.
+     * @param distanceMatrix
+     * @throws IllegalArgumentException if 'distanceMatrix' is a CSRDistanceMatrix.
+     */
+    public void computeEuclideanDistances(final DistanceMatrix distanceMatrix){
+        if(distanceMatrix instanceof CSRDistanceMatrix){
+            throw new IllegalArgumentException("Cannot fill a matrix with a fixed sparsity pattern.");
+        }
+        final int n_blocks = (n+BLOCK_SIZE-1)/BLOCK_SIZE;
+        if(n_blocks <= 1 || !distanceMatrix.supportsConcurrentWrites()){
+            for(int b=0;b<n_blocks;b++) computeBlockRow(b, distanceMatrix);
+            return;
+        }
+        Parallel.forEach(n_blocks, b -> computeBlockRow(b, distanceMatrix));
+    }
+
+    /**
+     * Computes the distances between the points of block 'ib' and the points of the blocks after it.
+     */
+    private void computeBlockRow(int ib, DistanceMatrix distanceMatrix){
+        int i_start = ib*BLOCK_SIZE, i_end = Math.min(n, i_start+BLOCK_SIZE);
+        for(int j_start=i_start;j_start<n;j_start+=BLOCK_SIZE){
+            int j_end = Math.min(n, j_start+BLOCK_SIZE);
+            for(int i=i_start;i<i_end;i++){
+                int offset_i = i*d;
+                for(int j=Math.max(j_start, i+1);j<j_end;j++){
+                    int offset_j = j*d;
+                    double s = 0;
+                    for(int k=0;k<d;k++){
+                        double diff = coordinates[offset_i+k]-coordinates[offset_j+k];
+                        s += diff*diff;
+                    }
+                    double dist = Math.sqrt(s);
+                    distanceMatrix.set(i, j, dist);
+                    distanceMatrix.set(j, i, dist);
+                }
+            }
+        }
+        for(int i=i_start;i<i_end;i++) distanceMatrix.set(i, i, 0);
+    }
+}
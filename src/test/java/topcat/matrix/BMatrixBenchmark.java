@@ -0,0 +1,142 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares multiplication and rank of dense matrices using the packed word kernels of BMatrix against the
+ * original hash set row operations.
+ *
+ * Run with:
+ *
+ *     mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt
+ *     java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) org.openjdk.jmh.Main BMatrixBenchmark
+ *
+ * where the usual JMH options can be appended, e.g -p size=1024 to only run the larger matrices.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BMatrixBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({"0.5"})
+    public double fill;
+
+    private BMatrix A, B;
+    private IntOpenHashSet[] hA, hB;
+
+    @Setup
+    public void setup(){
+        Random r = new Random(0);
+        A = new BMatrix(size, size);
+        B = new BMatrix(size, size);
+        hA = new IntOpenHashSet[size];
+        hB = new IntOpenHashSet[size];
+        for(int i=0;i<size;i++){
+            hA[i] = new IntOpenHashSet();
+            hB[i] = new IntOpenHashSet();
+            for(int j=0;j<size;j++){
+                if(r.nextDouble() < fill){
+                    A.set(i, j, true);
+                    hA[i].add(j);
+                }
+                if(r.nextDouble() < fill){
+                    B.set(i, j, true);
+                    hB[i].add(j);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public BMatrix mult(){
+        return A.mult(B);
+    }
+
+    @Benchmark
+    public IntOpenHashSet[] multHashSet(){
+        IntOpenHashSet[] C = new IntOpenHashSet[size];
+        for(int i=0;i<size;i++){
+            IntOpenHashSet row = new IntOpenHashSet();
+            IntIterator iterator = hA[i].iterator();
+            while(iterator.hasNext()) row = plus(row, hB[iterator.nextInt()]);
+            C[i] = row;
+        }
+        return C;
+    }
+
+    @Benchmark
+    public int rank(){
+        return BMatrix.rank(A);
+    }
+
+    @Benchmark
+    public int rankHashSet(){
+        IntOpenHashSet[] M = new IntOpenHashSet[size];
+        for(int i=0;i<size;i++) M[i] = new IntOpenHashSet(hA[i]);
+        int rank = 0;
+        for(int i=0;i<size;i++){
+            if(M[i].isEmpty()) continue;
+            int pivot = M[i].iterator().nextInt();
+            rank++;
+            for(int j=0;j<size;j++){
+                if(i != j && M[j].contains(pivot)) M[j] = plus(M[j], M[i]);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * The addition of two rows as implemented by the hash set BVector.
+     */
+    private static IntOpenHashSet plus(IntOpenHashSet a, IntOpenHashSet b){
+        IntOpenHashSet larger = a.size() < b.size() ? b : a;
+        IntOpenHashSet smaller = a.size() < b.size() ? a : b;
+        IntOpenHashSet n = new IntOpenHashSet(larger);
+        IntIterator iterator = smaller.iterator();
+        while(iterator.hasNext()){
+            int val = iterator.nextInt();
+            if(!n.remove(val)) n.add(val);
+        }
+        return n;
+    }
+
+    public static void main(String[] args) throws RunnerException{
+        Options options = new OptionsBuilder().include(BMatrixBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+import topcat.util.IntPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class BMatrixTest {
+
+    private static BMatrix randomMatrix(int rows, int cols, double fill, Random r){
+        BMatrix A = new BMatrix(rows, cols);
+        for(int i=0;i<rows;i++){
+            for(int j=0;j<cols;j++){
+                if(r.nextDouble() < fill) A.set(i, j, true);
+            }
+        }
+        return A;
+    }
+
+    @Test
+    public void denseAndSparseVectorsAgree(){
+        Random r = new Random(1);
+        int length = 1000;
+        for(int n=0;n<20;n++) {
+            BVector dense = new BVector(length);
+            BVector sparse = new BVector(length, new IntOpenHashSet());
+            BVector other = new BVector(length);
+            for (int i = 0; i < 200; i++) {
+                int k = r.nextInt(length);
+                dense.set(k, !dense.get(k));
+                other.set(r.nextInt(length), true);
+            }
+            for (int i = 0; i < length; i++) if (dense.get(i)) sparse.set(i, true);
+            Assert.assertTrue(dense.isDense());
+            Assert.assertEquals(dense, sparse);
+
+            BVector sum = dense.plus(other);
+            BVector inPlace = new BVector(sparse);
+            inPlace.add(other);
+            Assert.assertEquals(sum, inPlace);
+            for (int i = 0; i < length; i++) {
+                Assert.assertEquals(dense.get(i) ^ other.get(i), sum.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void positionsOutsideOfTheWordsKeepVectorsSparse(){
+        int length = 640;
+        BVector v = new BVector(length);
+        v.set(5000, true);
+        for(int i=0;i<length;i+=2) v.set(i, true);
+        Assert.assertFalse(v.isDense());
+        Assert.assertTrue(v.get(5000));
+        Assert.assertEquals(length/2+1, v.getNumberOfNonZeroElements());
+
+        //Once the position outside of the words is removed the vector can be packed again
+        v.set(5000, false);
+        Assert.assertTrue(v.isDense());
+        Assert.assertEquals(length/2, v.getNumberOfNonZeroElements());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void unitVectorRejectsPositionsOutsideOfTheVector(){
+        Assert.assertTrue(BVector.unit(10, 9).get(9));
+        BVector.unit(10, 10);
+    }
+
+    @Test
+    public void multiplyByInverseIsIdentity(){
+        Random r = new Random(2);
+        for(double fill : new double[]{0.01, 0.1, 0.5}) {
+            BMatrix A = BMatrix.identity(150);
+            BMatrix R = randomMatrix(150, 150, fill, r);
+            for (int i = 0; i < 150; i++) {
+                for (int j = i + 1; j < 150; j++) A.set(i, j, R.get(i, j)); //Upper triangular, hence invertible
+            }
+            Assert.assertEquals(BMatrix.identity(150), A.mult(A.inverse()));
+            Assert.assertEquals(150, BMatrix.rank(A));
+        }
+    }
+
+    @Test
+    public void rankNullityAndSolve(){
+        Random r = new Random(3);
+        for(double fill : new double[]{0.005, 0.05, 0.3}) {
+            BMatrix A = randomMatrix(90, 130, fill, r);
+            BMatrix K = BMatrix.ker(A);
+            Assert.assertEquals(A.cols, BMatrix.rank(A) + K.rows);
+            Assert.assertEquals(K.rows, BMatrix.rank(K));
+            Assert.assertEquals(new BMatrix(A.rows, K.rows), A.mult(K.transpose()));
+            Assert.assertEquals(BMatrix.rank(A), BMatrix.getBasis(A).rows);
+
+            BMatrix X = randomMatrix(130, 7, 0.5, r);
+            BMatrix B = A.mult(X);
+            Assert.assertEquals(B, A.mult(BMatrix.solve(A, B)));
+        }
+    }
+
+    @Test
+    public void fourRussiansAgreesWithRowOperations(){
+        Random r = new Random(4);
+        int n = FourRussians.THRESHOLD + 61;
+        BMatrix A = randomMatrix(n, n + 13, 0.5, r);
+        BMatrix B = randomMatrix(n + 13, n, 0.5, r);
+        BMatrix C = A.mult(B);
+        for(int k=0;k<5;k++) {
+            BVector x = new BVector(n);
+            for (int i = 0; i < n; i++) x.set(i, r.nextBoolean());
+            Assert.assertEquals(A.mult(B.mult(x)), C.mult(x));
+        }
+
+        //Low rank product of an n x 100 and a 100 x n matrix
+        BMatrix L = A.mult(randomMatrix(n + 13, 100, 0.5, r)).mult(randomMatrix(100, n, 0.5, r));
+        for(BMatrix M : new BMatrix[]{A, C, L}) {
+            int rank = BMatrix.rank(M);
+            Assert.assertEquals(rank, BMatrix.rank(M.transpose()));
+            Assert.assertEquals(M.cols, rank + BMatrix.ker(M).rows);
+        }
+        Assert.assertTrue(BMatrix.rank(L) <= 100);
+    }
+
+    @Test
+    public void reduceRowsWithPivotsThatAreNotTheLowestColumns(){
+        //Row 1 is row 0, which has column 0 below its pivot 65
+        BMatrix A = new BMatrix(2, 70);
+        for(int i=0;i<2;i++){
+            A.set(i, 0, true);
+            A.set(i, 65, true);
+        }
+        BMatrix B = BMatrix.identity(2);
+        BMatrix.reduceRows(A, B, Arrays.asList(new IntPair(0, 65)));
+        Assert.assertEquals(0, A.getRow(1).getNumberOfNonZeroElements());
+        Assert.assertTrue(B.get(1, 0) && B.get(1, 1));
+
+        Random r = new Random(6);
+        for(double fill : new double[]{0.02, 0.2}) {
+            A = randomMatrix(40, 150, fill, r);
+            B = BMatrix.identity(40);
+            List<IntPair> pivots = new ArrayList<>();
+            for (int i = 0; i < A.rows; i++) {
+                int highest = -1;
+                for (int j = 0; j < A.cols; j++) if (A.get(i, j)) highest = j;
+                if (highest >= 0) pivots.add(new IntPair(i, highest));
+            }
+            BMatrix expectedA = new BMatrix(A), expectedB = new BMatrix(B);
+            for (IntPair pivot : pivots) {
+                int i = pivot._1();
+                if (expectedA.getRow(i).getNumberOfNonZeroElements() == 0) continue;
+                for (int j = 0; j < A.rows; j++) {
+                    if (j != i && expectedA.get(j, pivot._2())) {
+                        expectedA.setRow(j, expectedA.getRow(j).plus(expectedA.getRow(i)));
+                        expectedB.setRow(j, expectedB.getRow(j).plus(expectedB.getRow(i)));
+                    }
+                }
+            }
+            BMatrix.reduceRows(A, B, pivots);
+            Assert.assertEquals(expectedA, A);
+            Assert.assertEquals(expectedB, B);
+        }
+    }
+
+    @Test
+    public void heapColumnReductionRank(){
+        Random r = new Random(5);
+        for(double fill : new double[]{0.02, 0.2, 0.6}) {
+            BMatrix A = randomMatrix(60, 80, fill, r);
+            Assert.assertEquals(BMatrix.rank(A), PMatrix.rank(A));
+        }
+
+        LongColumn column = new LongColumn(1);
+        for(long i : new long[]{3, 7, 7, 1, 7, 3, 9, 9}) column.add(i);
+        Assert.assertEquals(7, column.pop_pivot());
+        Assert.assertEquals(1, column.pop_pivot());
+        Assert.assertEquals(-1, column.get_pivot());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.matrix.distancematrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+import topcat.util.Point;
+import topcat.util.PointCloud;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class CSRDistanceMatrixTest {
+
+    @Test
+    public void builderAgreesWithSparseDistanceMatrix(){
+        int n = 40;
+        Random random = new Random(3);
+        SparseDistanceMatrix sparse = new SparseDistanceMatrix(n, n);
+        CSRDistanceMatrix.Builder builder = new CSRDistanceMatrix.Builder(n, n);
+        for(int e=0;e<300;e++){
+            int i = random.nextInt(n), j = random.nextInt(n);
+            double val = random.nextDouble();
+            sparse.set(i, j, val);
+            sparse.set(j, i, val);
+            builder.addSymmetric(i, j, val);
+        }
+        CSRDistanceMatrix csr = builder.build();
+
+        int[] rows = sparse.getNonZeroRows().clone();
+        Arrays.sort(rows);
+        Assert.assertArrayEquals(rows, csr.getNonZeroRows());
+        for(int i=0;i<n;i++){
+            Assert.assertArrayEquals(sparse.getRow(i), csr.getRow(i), 0);
+            int[] cols = csr.getNonZeroRowEntries(i);
+            for(int p=1;p<cols.length;p++) Assert.assertTrue(cols[p-1] < cols[p]);
+            for(int j=0;j<n;j++) Assert.assertEquals(sparse.get(i, j), csr.get(i, j), 0);
+        }
+        Assert.assertEquals(CSRDistanceMatrix.create(sparse).getNonZeroRowEntries(rows[0]).length,
+                csr.getNonZeroRowEntries(rows[0]).length);
+    }
+
+    @Test
+    public void writesOutsideTheSparsityPatternAreRejected(){
+        CSRDistanceMatrix csr = new CSRDistanceMatrix.Builder(3, 3).addSymmetric(0, 1, 1.5).build();
+        csr.set(1, 0, 2.5);
+        Assert.assertEquals(2.5, csr.get(1, 0), 0);
+        Assert.assertFalse(csr.supportsConcurrentWrites());
+        try {
+            csr.set(0, 2, 1);
+            Assert.fail();
+        }catch (IllegalArgumentException e){
+            //Expected
+        }
+        try {
+            PointCloud.fromPoints(Arrays.asList(new Point(0.0), new Point(1.0), new Point(2.0))).computeEuclideanDistances(csr);
+            Assert.fail();
+        }catch (IllegalArgumentException e){
+            Assert.assertEquals(2.5, csr.get(1, 0), 0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.matrix.distancematrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+import topcat.util.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class DistanceMatrixTest {
+
+    @Test
+    public void boundedKNNMatrixAgreesWithFullRanks(){
+        Random random = new Random(4);
+        List<Point> points = new ArrayList<>();
+        //Points on a small lattice, so that many distances are equal
+        for(int i=0;i<80;i++) points.add(new Point((double) random.nextInt(5), (double) random.nextInt(5)));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        DistanceMatrix ranks = DistanceMatrix.computeKNNMatrix(distanceMatrix);
+        for(int k : new int[]{1, 7, 80, 200}){
+            DistanceMatrix bounded = DistanceMatrix.computeKNNMatrix(distanceMatrix, k);
+            for(int i=0;i<points.size();i++){
+                for(int j=0;j<points.size();j++){
+                    Assert.assertEquals(Math.min(ranks.get(i, j), k), bounded.get(i, j), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void codensityMatrixAgreesWithSequentialPairSort(){
+        Random random = new Random(5);
+        List<Point> points = new ArrayList<>();
+        //Points on a small lattice, so that many distances are equal and some points coincide
+        for(int i=0;i<60;i++) points.add(new Point((double) random.nextInt(4), (double) random.nextInt(4)));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        DistanceMatrix codensity = DistanceMatrix.codensityMatrix(distanceMatrix);
+
+        //The sequential definition: each row is stably sorted by distance, the entries are set row by row and an
+        //entry below the diagonal takes the value of its transpose if that is larger
+        int n = points.size();
+        DistanceMatrix expected = new ArrayDistanceMatrix(n, n);
+        for(int r=0;r<n;r++){
+            final double[] row = distanceMatrix.getRow(r);
+            Integer[] order = new Integer[n];
+            for(int i=0;i<n;i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(row[a], row[b]));
+            expected.set(r, r, -n);
+            for(int i=1;i<n;i++){
+                int c = order[i];
+                double value = -i/row[c];
+                if(c < r && expected.get(c, r) > value) value = expected.get(c, r);
+                expected.set(r, c, value);
+            }
+        }
+        for(int i=0;i<n;i++){
+            for(int j=0;j<n;j++){
+                Assert.assertEquals(expected.get(i, j), codensity.get(i, j), 0);
+            }
+        }
+    }
+}
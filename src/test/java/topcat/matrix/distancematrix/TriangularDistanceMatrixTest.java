@@ -0,0 +1,71 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.matrix.distancematrix;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import topcat.util.Point;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TriangularDistanceMatrixTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void agreesWithArrayDistanceMatrix() throws IOException {
+        Random random = new Random(1);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<40;i++) points.add(new Point(Arrays.asList(random.nextDouble(), random.nextDouble(), random.nextDouble())));
+        DistanceMatrix expected = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        DistanceMatrix doubles = TriangularDistanceMatrix.computeEuclideanDistanceMatrix(points, TriangularDistanceMatrix.Precision.DOUBLE);
+        DistanceMatrix floats = TriangularDistanceMatrix.computeEuclideanDistanceMatrix(points, TriangularDistanceMatrix.Precision.FLOAT);
+
+        File f = folder.newFile("distances.bin");
+        TriangularDistanceMatrix mapped = TriangularDistanceMatrix.map(f, points.size(), TriangularDistanceMatrix.Precision.FLOAT);
+        for(int i=0;i<points.size();i++){
+            for(int j=0;j<=i;j++) mapped.set(i, j, expected.get(i, j));
+        }
+        DistanceMatrix reopened = TriangularDistanceMatrix.map(f, points.size(), TriangularDistanceMatrix.Precision.FLOAT);
+        //The file is big-endian and starts with the first row of the upper triangle
+        try(DataInputStream in = new DataInputStream(new FileInputStream(f))){
+            Assert.assertEquals(0, in.readFloat(), 0);
+            Assert.assertEquals((float) expected.get(0, 1), in.readFloat(), 0);
+        }
+
+        for(int i=0;i<points.size();i++){
+            Assert.assertArrayEquals(expected.getRow(i), doubles.getRow(i), 0);
+            for(int j=0;j<points.size();j++){
+                Assert.assertEquals(expected.get(i, j), floats.get(i, j), 1e-6);
+                Assert.assertEquals(expected.get(i, j), reopened.get(i, j), 1e-6);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.homology;
+
+import org.junit.Assert;
+import org.junit.Test;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import topcat.matrix.BMatrix;
+import topcat.matrix.distancematrix.DistanceMatrix;
+import topcat.persistence.functor.Functor;
+import topcat.persistence.functor.PresentedFunctor;
+import topcat.persistence.simplex.ChainComplexStorageStructure;
+import topcat.persistence.simplex.ChunkReduction;
+import topcat.persistence.simplex.Simplex;
+import topcat.persistence.simplex.SimplexBoundaryEnumerator;
+import topcat.persistence.simplex.SimplexStorageStructure;
+import topcat.persistence.simplex.SimplicialComplex;
+import topcat.util.BinomialCoeffTable;
+import topcat.util.GridIterator;
+import topcat.util.IntTuple;
+import topcat.util.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class HomologyUtilTest {
+
+    private static final int maxDimension = 3;
+    private static final IntTuple size = new IntTuple(5, 5);
+
+    private static SimplexStorageStructure randomComplex(){
+        List<Point> points = Point.getRandomSpherePoints(20, 2, new Random(7));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        List<DistanceMatrix> distanceMatrices = new ArrayList<>();
+        distanceMatrices.add(distanceMatrix);
+        distanceMatrices.add(DistanceMatrix.computeKNNMatrix(distanceMatrix));
+
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        List<Double> radius = new ArrayList<>();
+        List<Double> knn = new ArrayList<>();
+        for(int i=0;i<6;i++){
+            radius.add(i*0.3);
+            knn.add((double) i*3);
+        }
+        filtrationValues.add(radius);
+        filtrationValues.add(knn);
+        return SimplicialComplex.computeSimplexStream(distanceMatrices, filtrationValues, maxDimension);
+    }
+
+    private static void assertSameRanks(List<Functor> expected, List<Functor> actual) throws Exception {
+        for(int k=0;k<maxDimension;k++){
+            for(IntTuple v : GridIterator.getSequence(size)){
+                Assert.assertEquals(expected.get(k).getDimension(v), actual.get(k).getDimension(v));
+                Assert.assertEquals(BMatrix.rank(expected.get(k).getMap(v, size)), BMatrix.rank(actual.get(k).getMap(v, size)));
+            }
+        }
+    }
+
+    @Test
+    public void shortcutsAgreeWithFullReduction() throws Exception {
+        SimplexStorageStructure simplexStorageStructure = randomComplex();
+        List<Functor> fast = HomologyUtil.computeHomologyFunctors(simplexStorageStructure, size, maxDimension, true);
+        List<Functor> full = HomologyUtil.computeHomologyFunctors(simplexStorageStructure, size, maxDimension, false);
+        assertSameRanks(full, fast);
+    }
+
+    /**
+     * The boundary matrix with columns given by 'simplices' and rows given by 'faces'.
+     */
+    private static BMatrix boundary(List<Simplex> simplices, List<Simplex> faces, int n_vertices){
+        Long2IntOpenHashMap position = new Long2IntOpenHashMap();
+        for(int i=0;i<faces.size();i++) position.put(faces.get(i).getIndex(), i);
+        BinomialCoeffTable binomialCoeffTable = new BinomialCoeffTable(n_vertices, maxDimension+2);
+        BMatrix A = new BMatrix(faces.size(), simplices.size());
+        for(int j=0;j<simplices.size();j++){
+            SimplexBoundaryEnumerator enumerator = new SimplexBoundaryEnumerator(simplices.get(j), n_vertices, binomialCoeffTable);
+            while(enumerator.hasNext()) A.set(position.get(enumerator.next()), j, true);
+        }
+        return A;
+    }
+
+    private static int rank(BMatrix A){
+        return A.rows == 0 || A.cols == 0 ? 0 : BMatrix.rank(A);
+    }
+
+    @Test
+    public void incrementalAgreesWithBoundaryRanks() throws Exception {
+        SimplexStorageStructure simplexStorageStructure = randomComplex();
+        int n_vertices = simplexStorageStructure.getNumberOfVertices();
+        List<Functor> incremental = HomologyUtil.computeHomologyFunctorsIncremental(simplexStorageStructure, size, maxDimension);
+        for(int k=1;k<maxDimension;k++){
+            for(IntTuple v : GridIterator.getSequence(size)){
+                for(IntTuple w : GridIterator.getSequence(size)){
+                    if(!v.leq(w)) continue;
+                    //The rank of H_k(v) -> H_k(w) is dim(Z_k(v) + B_k(w)) - dim(B_k(w))
+                    List<Simplex> simplices_v = simplexStorageStructure.getSimplicesLEQThan(k, v);
+                    List<Simplex> simplices_w = simplexStorageStructure.getSimplicesLEQThan(k, w);
+                    BMatrix cycles = BMatrix.ker(boundary(simplices_v, simplexStorageStructure.getSimplicesLEQThan(k-1, v), n_vertices)).transpose();
+                    BMatrix boundaries = boundary(simplexStorageStructure.getSimplicesLEQThan(k+1, w), simplices_w, n_vertices);
+                    BMatrix included = HomologyUtil.computeInclusionMap(simplices_v, simplices_w).mult(cycles);
+                    int expected = rank(BMatrix.concat(included, boundaries)) - rank(boundaries);
+                    Assert.assertEquals(expected, rank(incremental.get(k).getMap(v, w)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void chunkReductionPreservesHomology() throws Exception {
+        SimplexStorageStructure simplexStorageStructure = randomComplex();
+        ChainComplexStorageStructure reduced = ChunkReduction.reduce(simplexStorageStructure);
+        for(int k=0;k<=maxDimension;k++){
+            Assert.assertTrue(reduced.getSimplicesLEQThan(k, size).size() <= simplexStorageStructure.getSimplicesLEQThan(k, size).size());
+        }
+        Assert.assertTrue(reduced.getSimplicesLEQThan(1, size).size() < simplexStorageStructure.getSimplicesLEQThan(1, size).size());
+
+        List<Functor> expected = HomologyUtil.computeHomologyFunctorsIncremental(simplexStorageStructure, size, maxDimension);
+        List<Functor> actual = HomologyUtil.computeHomologyFunctors(reduced, size, maxDimension);
+        for(int k=0;k<maxDimension;k++){
+            for(IntTuple v : GridIterator.getSequence(size)){
+                for(IntTuple w : GridIterator.getSequence(size)){
+                    if(!v.leq(w)) continue;
+                    Assert.assertEquals(rank(expected.get(k).getMap(v, w)), rank(actual.get(k).getMap(v, w)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void minimalPresentationAgreesWithIncremental() throws Exception {
+        SimplexStorageStructure simplexStorageStructure = randomComplex();
+        List<Functor> expected = HomologyUtil.computeHomologyFunctorsIncremental(simplexStorageStructure, size, maxDimension);
+        List<PresentedFunctor> presented = MinimalPresentation.compute(simplexStorageStructure, maxDimension);
+        for(int k=0;k<maxDimension;k++){
+            PresentedFunctor F = presented.get(k);
+            //A minimal presentation has no relation involving a generator of the same grade
+            for(int r=0;r<F.getRelations().size();r++){
+                for(long g : F.getRelations().get(r)){
+                    Assert.assertNotEquals(F.getRelationGrades().get(r), F.getGeneratorGrades().get((int) g));
+                }
+            }
+            for(IntTuple v : GridIterator.getSequence(size)){
+                Assert.assertEquals(expected.get(k).getDimension(v), F.getDimension(v));
+                for(IntTuple w : GridIterator.getSequence(size)){
+                    if(!v.leq(w)) continue;
+                    Assert.assertEquals(rank(expected.get(k).getMap(v, w)), F.rank(v, w));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void inclusionMapAgreesForSortedAndUnsortedLists(){
+        List<Integer> current = new ArrayList<>();
+        for(int i=0;i<100;i++) current.add(3*i);
+        List<Integer> lower = new ArrayList<>();
+        for(int i=0;i<100;i+=3) lower.add(3*i);
+        List<Integer> shuffled = new ArrayList<>(lower);
+        Collections.shuffle(shuffled, new Random(1));
+
+        BMatrix sorted = HomologyUtil.computeInclusionMap(lower, current);
+        BMatrix unsorted = HomologyUtil.computeInclusionMap(shuffled, current);
+        for(int i=0;i<current.size();i++){
+            for(int j=0;j<lower.size();j++){
+                Assert.assertEquals(current.get(i).equals(lower.get(j)), sorted.get(i, j));
+                Assert.assertEquals(current.get(i).equals(shuffled.get(j)), unsorted.get(i, j));
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.persistence.simplex;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import topcat.util.GridIterator;
+import topcat.util.IntTuple;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class SimplexStorageStructureTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void simplicesLEQThanAreSortedDownSets(){
+        //Dense enough for the cell walk, and sparse enough for the scan of all simplices
+        checkDownSets(45);
+        checkDownSets(6);
+    }
+
+    private void checkDownSets(int n){
+        IntTuple size = new IntTuple(4, 3);
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        filtrationValues.add(new ArrayList<>(Collections.nCopies(5, 0.0)));
+        filtrationValues.add(new ArrayList<>(Collections.nCopies(4, 0.0)));
+        SimplexStorageStructure simplexStorageStructure = new SimplexStorageStructure(filtrationValues, size, 3, 10);
+        Random random = new Random(7);
+        List<IntTuple> grades = new ArrayList<>();
+        for(int i=0;i<n;i++){
+            IntTuple grade = new IntTuple(random.nextInt(5), random.nextInt(4));
+            grades.add(grade);
+            simplexStorageStructure.addElement(new Simplex(n-1-i, 1), grade);
+        }
+        for(IntTuple v : GridIterator.getSequence(size)){
+            List<Simplex> expected = new ArrayList<>();
+            for(int i=0;i<grades.size();i++){
+                if(grades.get(i).leq(v)) expected.add(new Simplex(n-1-i, 1));
+            }
+            Collections.sort(expected);
+            Assert.assertEquals(expected, simplexStorageStructure.getSimplicesLEQThan(1, v));
+            for(int i=0;i<v.length();i++){
+                if(v.get(i) == 0) continue;
+                IntTuple u = v.minus(IntTuple.getStandardBasisElement(v.length(), i));
+                List<Simplex> previous = simplexStorageStructure.getSimplicesLEQThan(1, u);
+                Assert.assertEquals(expected, simplexStorageStructure.getSimplicesLEQThan(1, v, previous, i));
+            }
+        }
+
+        //Grades outside of the grid see the simplices of the part of the grid below them
+        for(IntTuple v : Arrays.asList(new IntTuple(6, 1), new IntTuple(2, 5), new IntTuple(7, 7), new IntTuple(-1, 2), new IntTuple(3, -1))){
+            List<Simplex> expected = new ArrayList<>();
+            for(int i=0;i<grades.size();i++){
+                if(grades.get(i).leq(v)) expected.add(new Simplex(n-1-i, 1));
+            }
+            Collections.sort(expected);
+            Assert.assertEquals(expected, simplexStorageStructure.getSimplicesLEQThan(1, v));
+            IntTuple u = v.minus(IntTuple.getStandardBasisElement(v.length(), 0));
+            List<Simplex> previous = simplexStorageStructure.getSimplicesLEQThan(1, u);
+            Assert.assertEquals(expected, simplexStorageStructure.getSimplicesLEQThan(1, v, previous, 0));
+        }
+    }
+
+    @Test
+    public void binaryFormatRoundTrip() throws IOException {
+        IntTuple size = new IntTuple(4, 3);
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        filtrationValues.add(new ArrayList<>());
+        filtrationValues.add(new ArrayList<>());
+        for(int i=0;i<5;i++) filtrationValues.get(0).add(0.5*i);
+        for(int i=0;i<4;i++) filtrationValues.get(1).add(1.0*i);
+        SimplexStorageStructure simplexStorageStructure = new SimplexStorageStructure(filtrationValues, size, 2, 10);
+        Random random = new Random(11);
+        for(int i=0;i<10;i++) simplexStorageStructure.addElement(i, 0, new int[]{random.nextInt(2), random.nextInt(2)});
+        for(int i=0;i<45;i++) simplexStorageStructure.addElement(i, 1, new int[]{random.nextInt(5), random.nextInt(4)});
+
+        File binaryFile = folder.newFile("complex.bin");
+        File textFile = folder.newFile("complex.txt");
+        File convertedFile = folder.newFile("converted.bin");
+        simplexStorageStructure.writeToBinaryFile(binaryFile);
+        BinarySimplexFormat.convertToText(binaryFile, textFile);
+        BinarySimplexFormat.convertToBinary(textFile, convertedFile);
+
+        for(File f : new File[]{binaryFile, convertedFile}){
+            SimplexStorageStructure read = SimplexStorageStructure.readFromBinaryFile(f);
+            Assert.assertEquals(filtrationValues, read.getFiltrationValues());
+            Assert.assertEquals(size, read.getGridSize());
+            Assert.assertEquals(10, read.getNumberOfVertices());
+            for(int dim=0;dim<=1;dim++){
+                Assert.assertEquals(simplexStorageStructure.getNumberOfSimplices(dim), read.getNumberOfSimplices(dim));
+                for(IntTuple v : GridIterator.getSequence(size)){
+                    Assert.assertEquals(simplexStorageStructure.getIndexesAt(dim, v), read.getIndexesAt(dim, v));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelReaderAgreesWithReadFromFile() throws IOException {
+        IntTuple size = new IntTuple(4, 3);
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        filtrationValues.add(new ArrayList<>(Collections.nCopies(5, 1.0)));
+        filtrationValues.add(new ArrayList<>(Collections.nCopies(4, 2.0)));
+        SimplexStorageStructure simplexStorageStructure = new SimplexStorageStructure(filtrationValues, size, 2, 20);
+        Random random = new Random(13);
+        for(int i=0;i<20;i++) simplexStorageStructure.addElement(i, 0, new int[]{random.nextInt(2), random.nextInt(2)});
+        for(int i=0;i<190;i++) simplexStorageStructure.addElement(i, 1, new int[]{random.nextInt(5), random.nextInt(4)});
+        for(int i=0;i<300;i++) simplexStorageStructure.addElement(random.nextInt(1140), 2, new int[]{random.nextInt(5), random.nextInt(4)});
+
+        File textFile = folder.newFile("complex.txt");
+        BinarySimplexFormat.writeText(simplexStorageStructure, textFile);
+        SimplexStorageStructure expected = SimplexStorageStructure.readFromFile(textFile);
+        for(int n_threads : new int[]{1, 3, 16}){
+            SimplexStorageStructure read = ParallelSimplexReader.readFromFile(textFile, n_threads);
+            Assert.assertEquals(expected.getFiltrationValues(), read.getFiltrationValues());
+            for(int dim=0;dim<=2;dim++){
+                Assert.assertEquals(expected.getNumberOfSimplices(dim), read.getNumberOfSimplices(dim));
+                for(IntTuple v : GridIterator.getSequence(size)){
+                    Assert.assertEquals(expected.getIndexesAt(dim, v), read.getIndexesAt(dim, v));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.persistence.simplex;
+
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.junit.Assert;
+import org.junit.Test;
+import topcat.persistence.functor.PresentedFunctor;
+import topcat.persistence.homology.MinimalPresentation;
+import topcat.matrix.distancematrix.ArrayDistanceMatrix;
+import topcat.matrix.distancematrix.DistanceMatrix;
+import topcat.util.GridIterator;
+import topcat.util.IntTuple;
+import topcat.util.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class SimplicialComplexTest {
+
+    @Test
+    public void simplexStreamAgreesWithCalcFiltrationIndexes(){
+        Random random = new Random(5);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<25;i++) points.add(new Point(Arrays.asList(random.nextDouble(), random.nextDouble())));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        List<DistanceMatrix> distanceMatrices = new ArrayList<>();
+        distanceMatrices.add(distanceMatrix);
+        distanceMatrices.add(DistanceMatrix.codensityMatrix(distanceMatrix));
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        //Only the edges of the first metric are truncated, since the codensity of a vertex lies inside its range
+        double[] fraction = new double[]{0.6, 1.0};
+        for(int k=0;k<distanceMatrices.size();k++){
+            DistanceMatrix matrix = distanceMatrices.get(k);
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for(int i=0;i<matrix.rows;i++){
+                for(int j=0;j<matrix.cols;j++){
+                    min = Math.min(min, matrix.get(i, j));
+                    max = Math.max(max, matrix.get(i, j));
+                }
+            }
+            List<Double> values = new ArrayList<>();
+            for(int i=0;i<=6;i++) values.add(min+fraction[k]*(max-min)*i/6);
+            filtrationValues.add(values);
+        }
+        int maxDimension = 3;
+        SimplexStorageStructure simplexStorageStructure = SimplicialComplex.computeSimplexStream(distanceMatrices, filtrationValues, maxDimension);
+
+        //Enumerate the cliques of the graph of edges below the largest filtration values by brute force
+        int n = distanceMatrix.rows;
+        int n_simplices = 0;
+        for(int dim=0;dim<=maxDimension;dim++){
+            for(IntTuple v : GridIterator.getSequence(simplexStorageStructure.getGridSize())){
+                LongList indexes = simplexStorageStructure.getIndexesAt(dim, v);
+                if(indexes == null) continue;
+                for(int j=0;j<indexes.size();j++){
+                    Simplex simplex = new Simplex(indexes.getLong(j), dim);
+                    Assert.assertEquals(v, new IntTuple(SimplicialComplex.calcFiltrationIndexes(simplex, distanceMatrices, filtrationValues, simplexStorageStructure.binomialCoeffTable)));
+                }
+                n_simplices += indexes.size();
+            }
+        }
+        int expected = 0;
+        for(int a=0;a<n;a++){
+            expected++;
+            for(int b=a+1;b<n;b++){
+                if(!isEdge(distanceMatrices, filtrationValues, a, b)) continue;
+                expected++;
+                for(int c=b+1;c<n;c++){
+                    if(!isEdge(distanceMatrices, filtrationValues, a, c) || !isEdge(distanceMatrices, filtrationValues, b, c)) continue;
+                    expected++;
+                    for(int d=c+1;d<n;d++){
+                        if(isEdge(distanceMatrices, filtrationValues, a, d) && isEdge(distanceMatrices, filtrationValues, b, d)
+                                && isEdge(distanceMatrices, filtrationValues, c, d)) expected++;
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(expected, n_simplices);
+    }
+
+    private static boolean isEdge(List<DistanceMatrix> distanceMatrices, List<List<Double>> filtrationValues, int i, int j){
+        for(int k=0;k<distanceMatrices.size();k++){
+            List<Double> values = filtrationValues.get(k);
+            if(distanceMatrices.get(k).get(i, j) > values.get(values.size()-1)) return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void simplicesOutsideOfTheGridAreDropped(){
+        Random random = new Random(8);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<20;i++) points.add(new Point(Arrays.asList(random.nextDouble(), random.nextDouble())));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        //A function on the vertices, extended to the edges by the maximum
+        int n = distanceMatrix.rows;
+        DistanceMatrix function = new ArrayDistanceMatrix(n, n);
+        for(int i=0;i<n;i++){
+            for(int j=0;j<n;j++) function.set(i, j, Math.max(i, j)/(double) n);
+        }
+
+        //The vertices with a function value above 0.5 appear after the largest filtration value
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        filtrationValues.add(Arrays.asList(0.0, 0.2, 0.4, 0.6));
+        filtrationValues.add(Arrays.asList(0.0, 0.25, 0.5));
+        SimplexStorageStructure simplexStorageStructure = SimplicialComplex.computeSimplexStream(Arrays.asList(distanceMatrix, function), filtrationValues, 2);
+        Assert.assertEquals(n/2+1, simplexStorageStructure.getNumberOfSimplices(0));
+        for(int dim=0;dim<=2;dim++){
+            for(IntTuple v : GridIterator.getSequence(simplexStorageStructure.getGridSize())){
+                LongList indexes = simplexStorageStructure.getIndexesAt(dim, v);
+                for(int j=0;j<indexes.size();j++){
+                    Simplex simplex = new Simplex(indexes.getLong(j), dim);
+                    Assert.assertEquals(v, new IntTuple(SimplicialComplex.calcFiltrationIndexes(simplex, Arrays.asList(distanceMatrix, function), filtrationValues, simplexStorageStructure.binomialCoeffTable)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void edgeCollapsePreservesHomology(){
+        Random random = new Random(3);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<30;i++) points.add(new Point(Arrays.asList(random.nextDouble(), random.nextDouble())));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        List<DistanceMatrix> distanceMatrices = new ArrayList<>();
+        distanceMatrices.add(distanceMatrix);
+        distanceMatrices.add(DistanceMatrix.codensityMatrix(distanceMatrix));
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        filtrationValues.add(Arrays.asList(0.0, 0.1, 0.2, 0.3, 0.4));
+        filtrationValues.add(Arrays.asList(-50.0, -40.0, -30.0, -25.0, -20.0, -10.0, 0.0));
+        int maxDimension = 2;
+
+        SimplexStorageStructure original = SimplicialComplex.computeSimplexStream(distanceMatrices, filtrationValues, maxDimension);
+        List<DistanceMatrix> collapsedMatrices = FlagComplexReduction.collapseEdges(distanceMatrices, filtrationValues);
+        SimplexStorageStructure collapsed = SimplicialComplex.computeSimplexStream(collapsedMatrices, filtrationValues, maxDimension);
+        Assert.assertTrue(collapsed.getNumberOfSimplices(1) < original.getNumberOfSimplices(1));
+
+        IntTuple size = original.getGridSize();
+        List<PresentedFunctor> expected = MinimalPresentation.compute(original, maxDimension);
+        List<PresentedFunctor> actual = MinimalPresentation.compute(collapsed, maxDimension);
+        for(int k=0;k<maxDimension;k++){
+            for(IntTuple v : GridIterator.getSequence(size)){
+                for(IntTuple w : GridIterator.getSequence(size)){
+                    if(v.leq(w)) Assert.assertEquals(expected.get(k).rank(v, w), actual.get(k).rank(v, w));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sparseRipsKeepsShortEdges(){
+        Random random = new Random(9);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<60;i++) points.add(new Point(Arrays.asList(random.nextDouble(), random.nextDouble())));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        double epsilon = 0.5;
+        List<DistanceMatrix> sparse = FlagComplexReduction.sparseRips(Arrays.asList(distanceMatrix), epsilon);
+        double[] lambda = insertionRadii(distanceMatrix);
+        double e0 = (1+epsilon)/epsilon;
+        int n_edges = 0;
+        for(int i=0;i<distanceMatrix.rows;i++){
+            for(int j : sparse.get(0).getNonZeroRowEntries(i)){
+                if(j <= i) continue;
+                n_edges++;
+                //Edges are never shortened
+                Assert.assertTrue(sparse.get(0).get(i, j) >= distanceMatrix.get(i, j) - 1e-12);
+            }
+            //Edges that are shorter than the balls of both vertices are kept as they are
+            for(int j=i+1;j<distanceMatrix.cols;j++){
+                if(distanceMatrix.get(i, j) > 2*e0*Math.min(lambda[i], lambda[j])) continue;
+                boolean kept = false;
+                for(int l : sparse.get(0).getNonZeroRowEntries(i)) kept |= l == j;
+                Assert.assertTrue(kept);
+                Assert.assertEquals(distanceMatrix.get(i, j), sparse.get(0).get(i, j), 1e-12);
+            }
+        }
+        Assert.assertTrue(n_edges < distanceMatrix.rows*(distanceMatrix.rows-1)/2);
+    }
+
+    /**
+     * Returns the insertion radii of the greedy permutation of the points of 'distanceMatrix' starting at vertex 0.
+     */
+    private static double[] insertionRadii(DistanceMatrix distanceMatrix){
+        int n = distanceMatrix.rows;
+        double[] lambda = new double[n];
+        Arrays.fill(lambda, -1);
+        lambda[0] = Double.POSITIVE_INFINITY;
+        for(int step=1;step<n;step++){
+            int next = -1;
+            double radius = -1;
+            for(int j=0;j<n;j++){
+                if(lambda[j] >= 0) continue;
+                double distance = Double.POSITIVE_INFINITY;
+                for(int i=0;i<n;i++){
+                    if(lambda[i] >= 0) distance = Math.min(distance, distanceMatrix.get(i, j));
+                }
+                if(distance > radius){
+                    next = j;
+                    radius = distance;
+                }
+            }
+            lambda[next] = radius;
+        }
+        return lambda;
+    }
+
+    @Test
+    public void sparseRipsIsInterleavedWithRips(){
+        Random random = new Random(4);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<30;i++) points.add(new Point(Arrays.asList(random.nextDouble(), random.nextDouble())));
+        DistanceMatrix distanceMatrix = DistanceMatrix.computeEuclideanDistanceMatrix(points);
+        double epsilon = 0.5;
+        List<DistanceMatrix> sparse = FlagComplexReduction.sparseRips(Arrays.asList(distanceMatrix), epsilon);
+
+        //Geometric scales r_k = r_1*(1+epsilon)^(k-1), so that one step on the grid is one step of the interleaving
+        List<Double> values = new ArrayList<>();
+        values.add(0.0);
+        for(double r=0.05;r<2;r*=1+epsilon) values.add(r);
+        List<List<Double>> filtrationValues = new ArrayList<>();
+        filtrationValues.add(values);
+        int maxDimension = 2;
+        SimplexStorageStructure full = SimplicialComplex.computeSimplexStream(Arrays.asList(distanceMatrix), filtrationValues, maxDimension);
+        SimplexStorageStructure reduced = SimplicialComplex.computeSimplexStream(sparse, filtrationValues, maxDimension);
+        Assert.assertTrue(reduced.getNumberOfSimplices(1) < full.getNumberOfSimplices(1));
+
+        List<PresentedFunctor> expected = MinimalPresentation.compute(full, maxDimension);
+        List<PresentedFunctor> actual = MinimalPresentation.compute(reduced, maxDimension);
+        for(int k=0;k<maxDimension;k++){
+            //The map from scale r to scale (1+epsilon)^2*r in one filtration factors through scale (1+epsilon)*r of the other
+            for(int t=1;t+2<values.size();t++){
+                IntTuple u = new IntTuple(t), v = new IntTuple(t+1), w = new IntTuple(t+2);
+                Assert.assertTrue(expected.get(k).rank(u, w) <= actual.get(k).rank(v, v));
+                Assert.assertTrue(actual.get(k).rank(u, w) <= expected.get(k).rank(v, v));
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class GridIteratorTest {
+
+    @Test
+    public void pathSequencesReachTheEndPosition(){
+        IntTuple from = new IntTuple(0, 1);
+        IntTuple to = new IntTuple(3, 4);
+
+        List<IntTuple> sequence = GridIterator.getSequence(from, to);
+        Assert.assertEquals(7, sequence.size());
+        Assert.assertEquals(from, sequence.get(0));
+        Assert.assertEquals(to, sequence.get(sequence.size()-1));
+
+        Assert.assertEquals(Arrays.asList(0, 0, 0, 1, 1, 1), GridIterator.getIntegerSequence(from, to));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package topcat.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GridTest {
+
+    @Test
+    public void denseGridAgreesWithSparseGrid(){
+        IntTuple size = new IntTuple(3, 4, 2);
+        Grid<Integer> dense = Grid.create(size);
+        Grid<Integer> sparse = Grid.createSparse(size);
+        IntGrid ints = new IntGrid(size);
+        int i = 0;
+        for(IntTuple v : GridIterator.getSequence(size)){
+            dense.set(v, i);
+            sparse.set(v, i);
+            ints.setInt(v, i);
+            i++;
+        }
+        i = 0;
+        for(IntTuple v : GridIterator.getSequence(size)){
+            Assert.assertEquals(sparse.get(v), dense.get(v));
+            Assert.assertEquals(i++, ints.getInt(v));
+        }
+        Assert.assertNull(dense.get(new IntTuple(-1, 0, 0)));
+        Assert.assertNull(ints.get(new IntTuple(0, 5, 0)));
+    }
+}
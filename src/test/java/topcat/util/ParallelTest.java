@@ -0,0 +1,58 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ParallelTest {
+
+    @Test
+    public void runsEveryTaskAndPropagatesFailures(){
+        AtomicIntegerArray counts = new AtomicIntegerArray(100);
+        Parallel.forEach(100, 4, i -> counts.incrementAndGet(i));
+        for(int i=0;i<100;i++) Assert.assertEquals(1, counts.get(i));
+
+        try {
+            Parallel.forEach(100, 4, i -> {
+                if(i == 37) throw new IllegalArgumentException("task "+i);
+            });
+            Assert.fail();
+        }catch (IllegalArgumentException e){
+            Assert.assertEquals("task 37", e.getMessage());
+        }
+
+        Thread.currentThread().interrupt();
+        try {
+            Parallel.forEach(100, 4, i -> {
+                try {
+                    Thread.sleep(10000);
+                }catch (InterruptedException e){
+                    //Cancelled
+                }
+            });
+            Assert.fail();
+        }catch (IllegalStateException e){
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+Topcat - a multidimensional persistent homology library.
+Copyright (C) 2019 Oliver Gäfvert
+
+This file is part of Topcat.
+
+Topcat is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Topcat is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package topcat.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import topcat.matrix.distancematrix.DistanceMatrix;
+import topcat.matrix.distancematrix.SparseDistanceMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class PointCloudTest {
+
+    @Test
+    public void euclideanDistancesAgreeWithPoints(){
+        Random random = new Random(2);
+        List<Point> points = new ArrayList<>();
+        for(int i=0;i<600;i++) points.add(new Point(random.nextDouble(), random.nextDouble(), random.nextDouble()));
+        PointCloud pointCloud = PointCloud.fromPoints(points);
+        DistanceMatrix parallel = pointCloud.computeEuclideanDistanceMatrix();
+        DistanceMatrix sequential = new SparseDistanceMatrix(points.size(), points.size());
+        pointCloud.computeEuclideanDistances(sequential);
+        for(int i=0;i<points.size();i++){
+            for(int j=0;j<points.size();j++){
+                double expected = i == j ? 0 : Point.euclideanDistance(points.get(i), points.get(j));
+                Assert.assertEquals(expected, parallel.get(i, j), 1e-12);
+                Assert.assertEquals(expected, sequential.get(i, j), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void radiusDistanceMatrixContainsThePairsWithinTheRadius(){
+        Random random = new Random(8);
+        List<List<Double>> points = new ArrayList<>();
+        for(int i=0;i<700;i++) points.add(Arrays.asList(random.nextDouble(), random.nextDouble(), (double) random.nextInt(3)));
+        PointCloud pointCloud = PointCloud.fromLists(points);
+        DistanceMatrix dense = pointCloud.computeEuclideanDistanceMatrix();
+        double radius = 0.1;
+        DistanceMatrix sparse = pointCloud.computeEuclideanDistanceMatrix(radius);
+        for(int i=0;i<points.size();i++){
+            int n_neighbors = 0;
+            for(int j=0;j<points.size();j++){
+                if(i == j || dense.get(i, j) <= radius){
+                    Assert.assertEquals(dense.get(i, j), sparse.get(i, j), 0);
+                    n_neighbors++;
+                }
+            }
+            Assert.assertEquals(n_neighbors, sparse.getNonZeroRowEntries(i).length);
+        }
+    }
+}